@@ -0,0 +1,67 @@
+package com.fate101.collectiontracker;
+
+import org.bukkit.Material;
+
+import java.util.*;
+
+// Fixed-seed test data, so every run and every release measures the same workload
+final class BenchmarkData {
+    static final long SEED = 42;
+    // Players per write-behind flush, the default performance.write-behind.batch-size
+    static final int FLUSH_BATCH_PLAYERS = 100;
+
+    private BenchmarkData() {
+    }
+
+    static CollectibleItems collectibleItems() {
+        return new CollectibleItems(CollectionTracker.findCollectibleItems());
+    }
+
+    static UUID[] players(int count, Random random) {
+        UUID[] players = new UUID[count];
+        for (int i = 0; i < count; i++) {
+            players[i] = new UUID(random.nextLong(), random.nextLong());
+        }
+        return players;
+    }
+
+    // A random collection holding about the given share of all collectible items
+    static List<Material> collection(CollectibleItems items, Random random, double share) {
+        List<Material> collection = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            if (random.nextDouble() < share) {
+                collection.add(items.get(i));
+            }
+        }
+        return collection;
+    }
+
+    // One write-behind flush: a batch of players with one new discovery each
+    static Map<UUID, List<Material>> discoveryBatch(CollectibleItems items, UUID[] players, Random random) {
+        Map<UUID, List<Material>> batch = new HashMap<>();
+        while (batch.size() < Math.min(FLUSH_BATCH_PLAYERS, players.length)) {
+            batch.put(players[random.nextInt(players.length)],
+                    Collections.singletonList(items.get(random.nextInt(items.size()))));
+        }
+        return batch;
+    }
+
+    // Writes a collection for every player through the same batched path the plugin uses
+    static void fill(DatabaseManager databaseManager, CollectibleItems items, UUID[] players, Random random, double share) {
+        Map<UUID, List<Material>> batch = new HashMap<>();
+        for (UUID player : players) {
+            batch.put(player, collection(items, random, share));
+            if (batch.size() == FLUSH_BATCH_PLAYERS) {
+                write(databaseManager, batch);
+            }
+        }
+        write(databaseManager, batch);
+    }
+
+    private static void write(DatabaseManager databaseManager, Map<UUID, List<Material>> batch) {
+        if (!batch.isEmpty() && !databaseManager.addToPlayerCollections(batch)) {
+            throw new IllegalStateException("Could not write benchmark data");
+        }
+        batch.clear();
+    }
+}
@@ -0,0 +1,34 @@
+package com.fate101.collectiontracker;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+// Entry point of benchmarks.jar. Takes the usual JMH arguments (e.g. a benchmark name filter),
+// but writes JSON results to results/collectiontracker-<version>.json unless told otherwise, so
+// runs of different releases can be compared with any JMH result viewer.
+public final class BenchmarkMain {
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+        if (!commandLine.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        if (!commandLine.getResult().hasValue()) {
+            String version = BenchmarkMain.class.getPackage().getImplementationVersion();
+            File result = new File("results", "collectiontracker-" + (version != null ? version : "dev") + ".json");
+            result.getParentFile().mkdirs();
+            options.result(result.getPath());
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,42 @@
+package com.fate101.collectiontracker;
+
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.java.JavaPluginLoader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.logging.Level;
+import java.util.stream.Stream;
+
+// Plugin instance for DatabaseManager and MigrationEngine outside a server, through the
+// constructor JavaPlugin keeps for tests. getConfig() starts from the plugin's own config.yml
+// defaults; benchmarks override what they measure before creating the manager.
+class BenchmarkPlugin extends JavaPlugin {
+    @SuppressWarnings("deprecation")
+    BenchmarkPlugin(File dataFolder) {
+        super(new JavaPluginLoader(BenchmarkServer.get()),
+                new PluginDescriptionFile("CollectionTracker", "benchmark", CollectionTracker.class.getName()),
+                dataFolder, new File(dataFolder, "CollectionTracker.jar"));
+        // Keep per-operation log lines out of the measurements
+        getLogger().setLevel(Level.WARNING);
+    }
+
+    static File createDataFolder() throws IOException {
+        return Files.createTempDirectory("collectiontracker-bench").toFile();
+    }
+
+    static void deleteDataFolder(File dataFolder) throws IOException {
+        if (dataFolder == null || !dataFolder.exists()) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dataFolder.toPath())) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.fate101.collectiontracker;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Stand-in for the Bukkit server. Every method returns a default value, or another stand-in
+// when it returns an interface (item factory, item meta, plugin manager...), which is enough
+// for the code under benchmark: it only needs Bukkit to be initialized, not to do anything.
+final class BenchmarkServer {
+    private static final Logger LOGGER = Logger.getLogger("CollectionTrackerBenchmark");
+    private static Server server;
+
+    private BenchmarkServer() {
+    }
+
+    static synchronized Server get() {
+        if (server == null) {
+            // Bukkit announces the server version on setServer
+            LOGGER.setLevel(Level.WARNING);
+            server = proxy(Server.class);
+            Bukkit.setServer(server);
+        }
+        return server;
+    }
+
+    private static <T> T proxy(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(BenchmarkServer.class.getClassLoader(), new Class<?>[] {type},
+                BenchmarkServer::invoke));
+    }
+
+    private static Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "getLogger":
+                return LOGGER;
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "BenchmarkServer";
+            default:
+                break;
+        }
+        Class<?> returnType = method.getReturnType();
+        if (returnType == boolean.class) {
+            return false;
+        } else if (returnType == int.class) {
+            return 0;
+        } else if (returnType == long.class) {
+            return 0L;
+        } else if (returnType == double.class) {
+            return 0.0;
+        } else if (returnType == float.class) {
+            return 0.0f;
+        } else if (returnType == short.class) {
+            return (short) 0;
+        } else if (returnType == byte.class) {
+            return (byte) 0;
+        } else if (returnType == char.class) {
+            return '\0';
+        } else if (returnType.isInterface()) {
+            return proxy(returnType);
+        }
+        return null;
+    }
+}
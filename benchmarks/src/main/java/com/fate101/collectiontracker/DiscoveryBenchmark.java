@@ -0,0 +1,65 @@
+package com.fate101.collectiontracker;
+
+import org.bukkit.Material;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// The checks behind every pickup, craft and smelt event. isCreativeOnlyItem now only runs while
+// the collectible list is built on startup; the handlers themselves do an index lookup and a
+// bit test, so both are measured separately.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DiscoveryBenchmark {
+    private static final int EVENTS = 1024;
+
+    private CollectibleItems collectibleItems;
+    private PlayerCollection collection;
+    // Materials as they arrive from events, collectible or not
+    private Material[] events;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(BenchmarkData.SEED);
+        collectibleItems = BenchmarkData.collectibleItems();
+        collection = new PlayerCollection(collectibleItems);
+        collection.addAll(BenchmarkData.collection(collectibleItems, random, 0.5));
+
+        Material[] materials = Material.values();
+        events = new Material[EVENTS];
+        for (int i = 0; i < EVENTS; i++) {
+            events[i] = materials[random.nextInt(materials.length)];
+        }
+    }
+
+    private Material nextEvent() {
+        Material material = events[next];
+        next = (next + 1) & (EVENTS - 1);
+        return material;
+    }
+
+    @Benchmark
+    public boolean creativeOnlyCheck() {
+        return CollectionTracker.isCreativeOnlyItem(nextEvent());
+    }
+
+    // What discover() does before anything is written: collectible index, then the bit
+    @Benchmark
+    public boolean collectedCheck() {
+        int index = collectibleItems.indexOf(nextEvent());
+        return index >= 0 && collection.contains(index);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<Material> findCollectibleItems() {
+        return CollectionTracker.findCollectibleItems();
+    }
+}
@@ -0,0 +1,55 @@
+package com.fate101.collectiontracker;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Filling one page of the collection GUI, the work openCollectionGUI does besides creating the
+// inventory. The templates are plain stacks here: item meta needs a real server, and a page only
+// picks template references anyway. The stats book is built per page as in the plugin.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GuiPageBenchmark {
+    @Param({"first", "middle", "last"})
+    public String page;
+
+    private CollectionGuiTemplates templates;
+    private PlayerCollection collection;
+    private ItemStack[] contents;
+    private int pageIndex;
+
+    @Setup
+    public void setup() {
+        BenchmarkServer.get();
+        CollectibleItems items = BenchmarkData.collectibleItems();
+        ItemStack[] collected = new ItemStack[items.size()];
+        ItemStack[] notCollected = new ItemStack[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            collected[i] = new ItemStack(items.get(i));
+            notCollected[i] = new ItemStack(items.get(i));
+        }
+        templates = new CollectionGuiTemplates(items.size(), collected, notCollected, new ItemStack(Material.ARROW),
+                new ItemStack(Material.ARROW), new ItemStack(Material.BELL), new ItemStack(Material.BARRIER));
+
+        collection = new PlayerCollection(items);
+        collection.addAll(BenchmarkData.collection(items, new Random(BenchmarkData.SEED), 0.5));
+        contents = new ItemStack[54];
+        int lastPage = templates.getPageCount() - 1;
+        pageIndex = "first".equals(page) ? 0 : "middle".equals(page) ? lastPage / 2 : lastPage;
+    }
+
+    @Benchmark
+    public ItemStack[] fillPage() {
+        Arrays.fill(contents, null);
+        templates.fillPage(contents, collection, pageIndex, false);
+        return contents;
+    }
+}
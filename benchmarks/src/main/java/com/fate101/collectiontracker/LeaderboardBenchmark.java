@@ -0,0 +1,63 @@
+package com.fate101.collectiontracker;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// The in-memory leaderboard behind /coltop. The request named getLeaderboardEntries; the
+// ranking it did is now LeaderboardIndex, so building one page is getTop plus a count per entry.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LeaderboardBenchmark {
+    // Entries on one leaderboard page
+    private static final int PAGE_ENTRIES = 44;
+
+    @Param({"1000", "10000", "100000"})
+    public int players;
+
+    private LeaderboardIndex index;
+    private UUID[] playerIds;
+    private int maxCount;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(BenchmarkData.SEED);
+        maxCount = BenchmarkData.collectibleItems().size();
+        index = new LeaderboardIndex(maxCount);
+        playerIds = BenchmarkData.players(players, random);
+        for (UUID player : playerIds) {
+            // Most players have a small share of the items, a few have most of them
+            double share = Math.pow(random.nextDouble(), 3);
+            index.update(player, (int) (share * maxCount));
+        }
+    }
+
+    @Benchmark
+    public Map<UUID, Integer> leaderboardPage() {
+        Map<UUID, Integer> page = new LinkedHashMap<>();
+        for (UUID player : index.getTop(PAGE_ENTRIES)) {
+            page.put(player, index.getCount(player));
+        }
+        return page;
+    }
+
+    @Benchmark
+    public int viewerRank() {
+        return index.getRank(playerIds[ThreadLocalRandom.current().nextInt(players)]);
+    }
+
+    // A discovery moving one player up by one item
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void discoveryUpdate() {
+        UUID player = playerIds[ThreadLocalRandom.current().nextInt(players)];
+        int count = index.getCount(player);
+        index.update(player, count < maxCount ? count + 1 : 0);
+    }
+}
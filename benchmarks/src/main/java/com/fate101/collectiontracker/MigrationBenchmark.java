@@ -0,0 +1,89 @@
+package com.fate101.collectiontracker;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Full /collectiondbmigrate copy out of a SQLite database into a fresh target, unthrottled.
+// MySQL needs a server, so the SQL target is a second SQLite file.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MigrationBenchmark {
+    @Param({"5000"})
+    public int players;
+
+    @Param({"sqlite", "journal"})
+    public String target;
+
+    private File dataFolder;
+    private BenchmarkPlugin plugin;
+    private File sourceFile;
+    private File targetFile;
+    private File targetJournal;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dataFolder = BenchmarkPlugin.createDataFolder();
+        plugin = new BenchmarkPlugin(dataFolder);
+        StorageBenchmark.configure(plugin, "sqlite-wal-rows");
+        plugin.getConfig().set("database.migration.max-rows-per-second", 0);
+
+        CollectibleItems items = BenchmarkData.collectibleItems();
+        DatabaseManager databaseManager = new DatabaseManager(plugin, items.size());
+        if (!databaseManager.initialize()) {
+            throw new IllegalStateException("Could not open the source database");
+        }
+        Random random = new Random(BenchmarkData.SEED);
+        BenchmarkData.fill(databaseManager, items, BenchmarkData.players(players, random), random, 0.2);
+        databaseManager.close();
+
+        sourceFile = new File(dataFolder, "collections.db");
+        targetFile = new File(dataFolder, "target.db");
+        targetJournal = new File(dataFolder, "target-journal");
+    }
+
+    // Every run starts from an empty target
+    @Setup(Level.Invocation)
+    public void clearTarget() throws IOException {
+        BenchmarkPlugin.deleteDataFolder(targetJournal);
+        for (String suffix : new String[] {"", "-wal", "-shm"}) {
+            new File(targetFile.getPath() + suffix).delete();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkPlugin.deleteDataFolder(dataFolder);
+    }
+
+    @Benchmark
+    public void migrate() throws SQLException, IOException {
+        try (Connection source = DriverManager.getConnection("jdbc:sqlite:" + sourceFile.getAbsolutePath())) {
+            if ("journal".equals(target)) {
+                JournalStore journal = new JournalStore(targetJournal, plugin.getLogger(), 262144, 4, true);
+                journal.open();
+                try {
+                    new JournalMigration(plugin, null).toJournal(source, false, journal);
+                } finally {
+                    journal.close();
+                }
+                return;
+            }
+            try (Connection targetConnection = DriverManager.getConnection("jdbc:sqlite:" + targetFile.getAbsolutePath())) {
+                CollectionSchema.create(targetConnection, false);
+                CollectionSchema.ensureMaterials(targetConnection, false);
+                new MigrationEngine(plugin).migrate(source, targetConnection, "sqlite", "sqlite");
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.fate101.collectiontracker;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Time from opening the storage to having every player's count, what onEnable waits for. For
+// the journal this is the replay: from segments only, or from a snapshot after compaction.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StartupBenchmark {
+    @Param({"5000"})
+    public int players;
+
+    @Param({"sqlite-wal-rows", "sqlite-wal-bitset", "journal-segments", "journal-snapshot"})
+    public String storage;
+
+    private File dataFolder;
+    private BenchmarkPlugin plugin;
+    private int collectibleItems;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dataFolder = BenchmarkPlugin.createDataFolder();
+        plugin = new BenchmarkPlugin(dataFolder);
+        StorageBenchmark.configure(plugin, storage.startsWith("journal") ? "journal" : storage);
+        // Keep every record in segments unless this run starts from a snapshot
+        plugin.getConfig().set("database.journal.compact-after-segments", Integer.MAX_VALUE);
+        plugin.getConfig().set("database.journal.sync-writes", false);
+
+        CollectibleItems items = BenchmarkData.collectibleItems();
+        collectibleItems = items.size();
+        DatabaseManager databaseManager = new DatabaseManager(plugin, collectibleItems);
+        if (!databaseManager.initialize()) {
+            throw new IllegalStateException("Could not open " + storage + " storage");
+        }
+        Random random = new Random(BenchmarkData.SEED);
+        BenchmarkData.fill(databaseManager, items, BenchmarkData.players(players, random), random, 0.2);
+        databaseManager.close();
+
+        if ("journal-snapshot".equals(storage)) {
+            JournalStore journal = new JournalStore(new File(dataFolder, "journal"), plugin.getLogger(), 262144, 1, false);
+            journal.open();
+            journal.compact();
+            journal.close();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkPlugin.deleteDataFolder(dataFolder);
+    }
+
+    @Benchmark
+    public Map<UUID, Integer> openAndLoadCounts() {
+        DatabaseManager databaseManager = new DatabaseManager(plugin, collectibleItems);
+        try {
+            if (!databaseManager.initialize()) {
+                throw new IllegalStateException("Could not open " + storage + " storage");
+            }
+            return databaseManager.loadCollectionCounts();
+        } finally {
+            databaseManager.close();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.fate101.collectiontracker;
+
+import org.bukkit.Material;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// DatabaseManager on a temporary data folder: one write-behind flush, one login read and the
+// startup count read (the old loadAllCollections). Covers both SQLite journal modes, both
+// collection layouts and the journal backend.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBenchmark {
+    private static final int PLAYERS = 2000;
+
+    // sqlite-<journal mode>-<layout>, or journal
+    @Param({"sqlite-wal-rows", "sqlite-wal-bitset", "sqlite-delete-rows", "sqlite-delete-bitset", "journal"})
+    public String storage;
+
+    private File dataFolder;
+    private DatabaseManager databaseManager;
+    private CollectibleItems items;
+    private UUID[] players;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dataFolder = BenchmarkPlugin.createDataFolder();
+        BenchmarkPlugin plugin = new BenchmarkPlugin(dataFolder);
+        configure(plugin, storage);
+
+        items = BenchmarkData.collectibleItems();
+        databaseManager = new DatabaseManager(plugin, items.size());
+        if (!databaseManager.initialize()) {
+            throw new IllegalStateException("Could not open " + storage + " storage");
+        }
+        random = new Random(BenchmarkData.SEED);
+        players = BenchmarkData.players(PLAYERS, random);
+        BenchmarkData.fill(databaseManager, items, players, random, 0.3);
+    }
+
+    static void configure(BenchmarkPlugin plugin, String storage) {
+        if ("journal".equals(storage)) {
+            plugin.getConfig().set("database.type", "journal");
+            return;
+        }
+        String[] parts = storage.split("-");
+        plugin.getConfig().set("database.type", "sqlite");
+        plugin.getConfig().set("database.sqlite.journal-mode", parts[1].toUpperCase());
+        plugin.getConfig().set("database.collection-layout", parts[2]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        databaseManager.close();
+        BenchmarkPlugin.deleteDataFolder(dataFolder);
+    }
+
+    // Most discoveries in a batch are new until the collections fill up, which takes far longer
+    // than a measurement run
+    @Benchmark
+    public boolean saveDiscoveryBatch() {
+        return databaseManager.addToPlayerCollections(BenchmarkData.discoveryBatch(items, players, random));
+    }
+
+    @Benchmark
+    public Set<Material> loadPlayerCollection() {
+        return databaseManager.loadPlayerCollection(players[random.nextInt(PLAYERS)]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Map<UUID, Integer> loadCollectionCounts() {
+        return databaseManager.loadCollectionCounts();
+    }
+}
@@ -0,0 +1,43 @@
+package com.fate101.collectiontracker;
+
+import org.bukkit.Material;
+
+import java.util.*;
+
+// The sorted list of collectible materials. A material's position in this list is the bit
+// it occupies in every PlayerCollection. Lookups go through a table indexed by
+// Material.ordinal(), so event handlers pay one array read per check.
+public class CollectibleItems {
+    private final List<Material> items;
+    // -1 for materials that can't be collected (air, creative-only, technical blocks...)
+    private final int[] indexByOrdinal;
+
+    public CollectibleItems(List<Material> items) {
+        this.items = Collections.unmodifiableList(new ArrayList<>(items));
+        this.indexByOrdinal = new int[Material.values().length];
+        Arrays.fill(indexByOrdinal, -1);
+        for (int i = 0; i < this.items.size(); i++) {
+            indexByOrdinal[this.items.get(i).ordinal()] = i;
+        }
+    }
+
+    public int indexOf(Material material) {
+        return indexByOrdinal[material.ordinal()];
+    }
+
+    public boolean contains(Material material) {
+        return indexByOrdinal[material.ordinal()] >= 0;
+    }
+
+    public Material get(int index) {
+        return items.get(index);
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    public List<Material> asList() {
+        return items;
+    }
+}
@@ -0,0 +1,90 @@
+package com.fate101.collectiontracker;
+
+import java.io.ByteArrayOutputStream;
+import java.util.BitSet;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Blob format for the bitset collection layout. Bit n is set when the player has the material
+// whose materials.id is n. Ids come from the persisted dictionary and are never reused, so a
+// blob written before a Minecraft update still decodes after new materials are added; they
+// simply get higher ids.
+//
+// Layout: one version byte, one encoding byte, then the payload. The payload is the bitset as
+// little-endian bytes (BitSet.toByteArray), deflated when that makes it smaller.
+public final class CollectionBitset {
+    private static final byte VERSION = 1;
+    private static final byte RAW = 0;
+    private static final byte DEFLATED = 1;
+    private static final int HEADER_SIZE = 2;
+
+    private CollectionBitset() {
+    }
+
+    public static byte[] encode(BitSet bits) {
+        byte[] raw = bits.toByteArray();
+        byte[] deflated = deflate(raw);
+        boolean compress = deflated.length < raw.length;
+        byte[] payload = compress ? deflated : raw;
+
+        byte[] blob = new byte[HEADER_SIZE + payload.length];
+        blob[0] = VERSION;
+        blob[1] = compress ? DEFLATED : RAW;
+        System.arraycopy(payload, 0, blob, HEADER_SIZE, payload.length);
+        return blob;
+    }
+
+    public static BitSet decode(byte[] blob) {
+        if (blob == null || blob.length < HEADER_SIZE) {
+            throw new IllegalArgumentException("Collection blob is too short");
+        }
+        if (blob[0] != VERSION) {
+            throw new IllegalArgumentException("Unsupported collection blob version " + blob[0]);
+        }
+        byte[] payload = new byte[blob.length - HEADER_SIZE];
+        System.arraycopy(blob, HEADER_SIZE, payload, 0, payload.length);
+        return switch (blob[1]) {
+            case RAW -> BitSet.valueOf(payload);
+            case DEFLATED -> BitSet.valueOf(inflate(payload));
+            default -> throw new IllegalArgumentException("Unknown collection blob encoding " + blob[1]);
+        };
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+            byte[] buffer = new byte[512];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[512];
+            while (!inflater.finished()) {
+                int read = inflater.inflate(buffer);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Collection blob is truncated");
+                }
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Collection blob is corrupted: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
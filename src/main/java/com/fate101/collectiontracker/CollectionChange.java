@@ -0,0 +1,63 @@
+package com.fate101.collectiontracker;
+
+import org.bukkit.Material;
+
+import java.util.UUID;
+
+// One entry of the collection_changes log, read back by CollectionSync
+public class CollectionChange {
+    public enum Type {
+        ADD,
+        REMOVE,
+        // The player's whole collection was rewritten, cached copies must be read again
+        RELOAD;
+
+        static Type fromCode(int code) {
+            Type[] types = values();
+            return code >= 0 && code < types.length ? types[code] : RELOAD;
+        }
+    }
+
+    private final long id;
+    private final Type type;
+    private final UUID playerUUID;
+    private final Material material;
+    private final int itemCount;
+    private final boolean local;
+
+    public CollectionChange(long id, Type type, UUID playerUUID, Material material, int itemCount, boolean local) {
+        this.id = id;
+        this.type = type;
+        this.playerUUID = playerUUID;
+        this.material = material;
+        this.itemCount = itemCount;
+        this.local = local;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public UUID getPlayerUUID() {
+        return playerUUID;
+    }
+
+    // null for RELOAD, and for materials this server version doesn't have
+    public Material getMaterial() {
+        return material;
+    }
+
+    // The player's item count when the change was read
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    // Written by this server
+    public boolean isLocal() {
+        return local;
+    }
+}
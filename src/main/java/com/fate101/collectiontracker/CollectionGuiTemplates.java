@@ -0,0 +1,134 @@
+package com.fate101.collectiontracker;
+
+import org.bukkit.Material;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.inventory.ItemFlag;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.util.*;
+import java.util.function.Function;
+
+// Item stacks for the collection GUI, built once at startup. Every collectible item has a
+// prepared "collected" and "not collected" stack, so rendering a page only picks references.
+// Inventory.setItem copies the stack into the inventory, so the templates are never modified.
+public class CollectionGuiTemplates {
+    public static final int ITEMS_PER_PAGE = 45;
+    public static final int SLOT_PREVIOUS = 45;
+    public static final int SLOT_NOTIFICATIONS = 47;
+    public static final int SLOT_STATS = 49;
+    public static final int SLOT_NEXT = 53;
+
+    private final int totalItems;
+    private final ItemStack[] collected;
+    private final ItemStack[] notCollected;
+    private final ItemStack previousPage;
+    private final ItemStack nextPage;
+    private final ItemStack notificationsEnabled;
+    private final ItemStack notificationsDisabled;
+
+    public CollectionGuiTemplates(CollectibleItems collectibleItems, Function<String, String> nameFormatter) {
+        this(collectibleItems.size(),
+                createCollectibleItems(collectibleItems, nameFormatter, true),
+                createCollectibleItems(collectibleItems, nameFormatter, false),
+                createButton(Material.ARROW, "§ePrevious Page", Collections.emptyList()),
+                createButton(Material.ARROW, "§eNext Page", Collections.emptyList()),
+                createButton(Material.BELL, "§aNotifications Enabled", Arrays.asList(
+                        "§7Click to toggle collection notifications",
+                        "§aCurrently enabled",
+                        "§7You'll see collection messages")),
+                createButton(Material.BARRIER, "§cNotifications Disabled", Arrays.asList(
+                        "§7Click to toggle collection notifications",
+                        "§cCurrently disabled",
+                        "§7You won't see collection messages")));
+    }
+
+    // Takes prebuilt stacks. Used by the benchmarks, which run without a server to create item meta.
+    CollectionGuiTemplates(int totalItems, ItemStack[] collected, ItemStack[] notCollected, ItemStack previousPage,
+                           ItemStack nextPage, ItemStack notificationsEnabled, ItemStack notificationsDisabled) {
+        this.totalItems = totalItems;
+        this.collected = collected;
+        this.notCollected = notCollected;
+        this.previousPage = previousPage;
+        this.nextPage = nextPage;
+        this.notificationsEnabled = notificationsEnabled;
+        this.notificationsDisabled = notificationsDisabled;
+    }
+
+    // Fills the given contents array (54 slots) for one page of a player's collection
+    public void fillPage(ItemStack[] contents, PlayerCollection collection, int page, boolean notificationsOff) {
+        int startIndex = page * ITEMS_PER_PAGE;
+        int endIndex = Math.min(startIndex + ITEMS_PER_PAGE, totalItems);
+
+        for (int i = startIndex; i < endIndex; i++) {
+            contents[i - startIndex] = collection.contains(i) ? collected[i] : notCollected[i];
+        }
+
+        if (page > 0) {
+            contents[SLOT_PREVIOUS] = previousPage;
+        }
+        if (endIndex < totalItems) {
+            contents[SLOT_NEXT] = nextPage;
+        }
+        contents[SLOT_NOTIFICATIONS] = notificationsOff ? notificationsDisabled : notificationsEnabled;
+        contents[SLOT_STATS] = createStatsItem(collection.size());
+    }
+
+    public int getPageCount() {
+        return (totalItems + ITEMS_PER_PAGE - 1) / ITEMS_PER_PAGE;
+    }
+
+    private ItemStack createStatsItem(int itemsCollected) {
+        ItemStack stats = new ItemStack(Material.BOOK);
+        ItemMeta statsMeta = stats.getItemMeta();
+        statsMeta.setDisplayName("§6Collection Statistics");
+        List<String> statsLore = new ArrayList<>();
+        statsLore.add("§7Items Collected: §e" + itemsCollected);
+        statsLore.add("§7Total Items: §e" + totalItems);
+        statsLore.add("§7Completion: §e" +
+                String.format("%.1f%%", (itemsCollected * 100.0) / totalItems));
+        statsMeta.setLore(statsLore);
+        stats.setItemMeta(statsMeta);
+        return stats;
+    }
+
+    private static ItemStack[] createCollectibleItems(CollectibleItems collectibleItems, Function<String, String> nameFormatter,
+                                                      boolean isCollected) {
+        ItemStack[] items = new ItemStack[collectibleItems.size()];
+        for (int i = 0; i < items.length; i++) {
+            Material material = collectibleItems.get(i);
+            items[i] = createCollectibleItem(material, "§f" + nameFormatter.apply(material.name()), isCollected);
+        }
+        return items;
+    }
+
+    private static ItemStack createCollectibleItem(Material material, String displayName, boolean isCollected) {
+        ItemStack item = new ItemStack(material);
+        ItemMeta meta = item.getItemMeta();
+
+        if (meta != null) {
+            meta.setDisplayName(displayName);
+            if (isCollected) {
+                meta.setLore(Collections.singletonList("§aCollected!"));
+                meta.addEnchant(Enchantment.UNBREAKING, 1, true);
+                meta.addItemFlags(ItemFlag.HIDE_ENCHANTS);
+            } else {
+                meta.setLore(Collections.singletonList("§cNot collected"));
+            }
+            item.setItemMeta(meta);
+        }
+
+        return item;
+    }
+
+    private static ItemStack createButton(Material material, String displayName, List<String> lore) {
+        ItemStack button = new ItemStack(material);
+        ItemMeta meta = button.getItemMeta();
+        meta.setDisplayName(displayName);
+        if (!lore.isEmpty()) {
+            meta.setLore(lore);
+        }
+        button.setItemMeta(meta);
+        return button;
+    }
+}
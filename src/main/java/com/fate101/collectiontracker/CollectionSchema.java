@@ -0,0 +1,521 @@
+package com.fate101.collectiontracker;
+
+import org.bukkit.Material;
+
+import java.sql.*;
+import java.util.*;
+import java.util.logging.Logger;
+
+// Table layout shared by SQLite and MySQL. Collections are stored as (player_id, material_id)
+// integer pairs; the players and materials tables map those ids to UUIDs and material names.
+// A collection row is a few bytes instead of two strings, the primary key is the only index,
+// and loading a collection needs no UUID or enum parsing per row.
+public final class CollectionSchema {
+    public static final String LEGACY_TABLE = "player_collections";
+    public static final String LEGACY_BACKUP_TABLE = "player_collections_legacy";
+
+    private CollectionSchema() {
+    }
+
+    public static void create(Connection connection, boolean mysql) throws SQLException {
+        List<String> statements = new ArrayList<>();
+        if (mysql) {
+            statements.add("""
+                CREATE TABLE IF NOT EXISTS players (
+                    id INT AUTO_INCREMENT PRIMARY KEY,
+                    player_uuid CHAR(36) NOT NULL,
+                    UNIQUE KEY unique_player_uuid (player_uuid)
+                )
+                """);
+            statements.add("""
+                CREATE TABLE IF NOT EXISTS materials (
+                    id INT AUTO_INCREMENT PRIMARY KEY,
+                    material_name VARCHAR(100) NOT NULL,
+                    UNIQUE KEY unique_material_name (material_name)
+                )
+                """);
+            statements.add("""
+                CREATE TABLE IF NOT EXISTS collection_items (
+                    player_id INT NOT NULL,
+                    material_id INT NOT NULL,
+                    collected_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    PRIMARY KEY (player_id, material_id)
+                )
+                """);
+            statements.add("""
+                CREATE TABLE IF NOT EXISTS collection_bitsets (
+                    player_id INT PRIMARY KEY,
+                    item_count INT NOT NULL,
+                    bits BLOB NOT NULL,
+                    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+                )
+                """);
+            statements.add("""
+                CREATE TABLE IF NOT EXISTS player_stats (
+                    player_id INT PRIMARY KEY,
+                    item_count INT NOT NULL,
+                    completion DOUBLE NOT NULL,
+                    last_discovery_at TIMESTAMP NULL,
+                    INDEX idx_player_stats_rank (item_count DESC, last_discovery_at)
+                )
+                """);
+            statements.add("""
+                CREATE TABLE IF NOT EXISTS collection_changes (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    server_id CHAR(36) NOT NULL,
+                    player_id INT NOT NULL,
+                    material_id INT NOT NULL,
+                    change_type TINYINT NOT NULL
+                )
+                """);
+            statements.add("""
+                CREATE TABLE IF NOT EXISTS player_notifications (
+                    player_uuid VARCHAR(36) PRIMARY KEY,
+                    notifications_disabled BOOLEAN DEFAULT FALSE
+                )
+                """);
+            statements.add("""
+                CREATE TABLE IF NOT EXISTS player_profiles (
+                    player_uuid VARCHAR(36) PRIMARY KEY,
+                    player_name VARCHAR(16) NOT NULL,
+                    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+                )
+                """);
+        } else {
+            statements.add("""
+                CREATE TABLE IF NOT EXISTS players (
+                    id INTEGER PRIMARY KEY,
+                    player_uuid VARCHAR(36) NOT NULL UNIQUE
+                )
+                """);
+            statements.add("""
+                CREATE TABLE IF NOT EXISTS materials (
+                    id INTEGER PRIMARY KEY,
+                    material_name VARCHAR(100) NOT NULL UNIQUE
+                )
+                """);
+            // WITHOUT ROWID stores the rows in the primary key itself, so there is no second b-tree
+            statements.add("""
+                CREATE TABLE IF NOT EXISTS collection_items (
+                    player_id INTEGER NOT NULL,
+                    material_id INTEGER NOT NULL,
+                    collected_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    PRIMARY KEY (player_id, material_id)
+                ) WITHOUT ROWID
+                """);
+            statements.add("""
+                CREATE TABLE IF NOT EXISTS collection_bitsets (
+                    player_id INTEGER PRIMARY KEY,
+                    item_count INTEGER NOT NULL,
+                    bits BLOB NOT NULL,
+                    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                )
+                """);
+            statements.add("""
+                CREATE TABLE IF NOT EXISTS player_stats (
+                    player_id INTEGER PRIMARY KEY,
+                    item_count INTEGER NOT NULL,
+                    completion REAL NOT NULL,
+                    last_discovery_at TIMESTAMP
+                )
+                """);
+            statements.add("CREATE INDEX IF NOT EXISTS idx_player_stats_rank ON player_stats (item_count DESC, last_discovery_at)");
+            // AUTOINCREMENT so ids of compacted entries are never handed out again
+            statements.add("""
+                CREATE TABLE IF NOT EXISTS collection_changes (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    server_id VARCHAR(36) NOT NULL,
+                    player_id INTEGER NOT NULL,
+                    material_id INTEGER NOT NULL,
+                    change_type INTEGER NOT NULL
+                )
+                """);
+            statements.add("""
+                CREATE TABLE IF NOT EXISTS player_notifications (
+                    player_uuid VARCHAR(36) PRIMARY KEY,
+                    notifications_disabled BOOLEAN DEFAULT FALSE
+                )
+                """);
+            statements.add("""
+                CREATE TABLE IF NOT EXISTS player_profiles (
+                    player_uuid VARCHAR(36) PRIMARY KEY,
+                    player_name VARCHAR(16) NOT NULL,
+                    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                )
+                """);
+        }
+
+        try (Statement stmt = connection.createStatement()) {
+            for (String sql : statements) {
+                stmt.execute(sql);
+            }
+        }
+        if (mysql) {
+            widenMaterialIds(connection);
+        }
+    }
+
+    // Tables created while material ids were SMALLINT. MySQL used up an auto-increment value
+    // for every material INSERT IGNORE skipped on startup, so that range could run out.
+    private static void widenMaterialIds(Connection connection) throws SQLException {
+        String[][] columns = {
+                {"materials", "id", "INT NOT NULL AUTO_INCREMENT"},
+                {"collection_items", "material_id", "INT NOT NULL"},
+                {"collection_changes", "material_id", "INT NOT NULL"}
+        };
+        String typeSql = "SELECT DATA_TYPE FROM information_schema.COLUMNS "
+                + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND COLUMN_NAME = ?";
+        try (PreparedStatement typeStmt = connection.prepareStatement(typeSql);
+             Statement alterStmt = connection.createStatement()) {
+            for (String[] column : columns) {
+                typeStmt.setString(1, column[0]);
+                typeStmt.setString(2, column[1]);
+                try (ResultSet rs = typeStmt.executeQuery()) {
+                    if (rs.next() && "smallint".equalsIgnoreCase(rs.getString(1))) {
+                        alterStmt.execute("ALTER TABLE " + column[0] + " MODIFY " + column[1] + " " + column[2]);
+                    }
+                }
+            }
+        }
+    }
+
+    // Adds item materials the dictionary doesn't have yet. Ids are assigned once and never
+    // change, so they stay valid when a Minecraft update reorders the Material enum. Only the
+    // missing names are inserted: MySQL uses up an auto-increment value for every row that
+    // INSERT IGNORE skips.
+    public static void ensureMaterials(Connection connection, boolean mysql) throws SQLException {
+        Set<String> existing = new HashSet<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT material_name FROM materials")) {
+            while (rs.next()) {
+                existing.add(rs.getString(1));
+            }
+        }
+        List<String> missing = new ArrayList<>();
+        for (Material material : Material.values()) {
+            if (material.isItem() && !material.isAir() && !existing.contains(material.name())) {
+                missing.add(material.name());
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        // IGNORE only matters when another server sharing the database adds the same names
+        String insertSql = (mysql ? "INSERT IGNORE" : "INSERT OR IGNORE") + " INTO materials (material_name) VALUES (?)";
+        try (PreparedStatement stmt = connection.prepareStatement(insertSql)) {
+            for (String name : missing) {
+                stmt.setString(1, name);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    public static boolean hasRows(Connection connection, String table) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT 1 FROM " + table + " LIMIT 1")) {
+            return rs.next();
+        }
+    }
+
+    public static boolean tableExists(Connection connection, String table) throws SQLException {
+        try (ResultSet rs = connection.getMetaData().getTables(connection.getCatalog(), null, table, new String[] {"TABLE"})) {
+            return rs.next();
+        }
+    }
+
+    // Copies the old (player_uuid, material_name) rows into the dictionary tables, then renames
+    // the old table so it's kept as a backup until an admin drops it. Safe to run again: rows that
+    // were already copied are ignored.
+    public static void upgradeLegacy(Connection connection, boolean mysql, Logger logger) throws SQLException {
+        if (!tableExists(connection, LEGACY_TABLE)) {
+            return;
+        }
+        logger.info("Upgrading " + LEGACY_TABLE + " to the compact collection schema...");
+        String ignore = mysql ? "INSERT IGNORE" : "INSERT OR IGNORE";
+        long start = System.currentTimeMillis();
+        int copied;
+
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate(ignore + " INTO players (player_uuid) SELECT DISTINCT player_uuid FROM " + LEGACY_TABLE);
+            stmt.executeUpdate(ignore + " INTO materials (material_name) SELECT DISTINCT material_name FROM " + LEGACY_TABLE);
+            copied = stmt.executeUpdate(ignore + " INTO collection_items (player_id, material_id, collected_at) "
+                    + "SELECT p.id, m.id, l.collected_at FROM " + LEGACY_TABLE + " l "
+                    + "JOIN players p ON p.player_uuid = l.player_uuid "
+                    + "JOIN materials m ON m.material_name = l.material_name");
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+
+        try (Statement stmt = connection.createStatement()) {
+            if (tableExists(connection, LEGACY_BACKUP_TABLE)) {
+                stmt.execute("DROP TABLE " + LEGACY_BACKUP_TABLE);
+            }
+            stmt.execute("ALTER TABLE " + LEGACY_TABLE + " RENAME TO " + LEGACY_BACKUP_TABLE);
+        }
+        logger.info("Copied " + copied + " collection rows in " + (System.currentTimeMillis() - start) + "ms");
+        logComparison(connection, mysql, logger);
+        logger.info("The old table was kept as " + LEGACY_BACKUP_TABLE + " and can be dropped once you're happy with the upgrade");
+    }
+
+    // Insert-or-replace for one player's bitset row
+    public static String bitsetUpsertSql(boolean mysql) {
+        if (mysql) {
+            return """
+                INSERT INTO collection_bitsets (player_id, item_count, bits) VALUES (?, ?, ?)
+                ON DUPLICATE KEY UPDATE item_count = VALUES(item_count), bits = VALUES(bits)
+                """;
+        }
+        return """
+            INSERT INTO collection_bitsets (player_id, item_count, bits) VALUES (?, ?, ?)
+            ON CONFLICT(player_id) DO UPDATE SET item_count = excluded.item_count, bits = excluded.bits,
+                updated_at = CURRENT_TIMESTAMP
+            """;
+    }
+
+    // Insert-or-update for one player's stats row. last_discovery_at only moves when the count
+    // goes up, so players who reached a count first stay ahead of those who tie it later.
+    public static String statsUpsertSql(boolean mysql) {
+        if (mysql) {
+            // MySQL applies the assignments in order, last_discovery_at must see the old count
+            return """
+                INSERT INTO player_stats (player_id, item_count, completion, last_discovery_at)
+                VALUES (?, ?, ?, CURRENT_TIMESTAMP)
+                ON DUPLICATE KEY UPDATE
+                    last_discovery_at = IF(VALUES(item_count) > item_count, VALUES(last_discovery_at), last_discovery_at),
+                    item_count = VALUES(item_count),
+                    completion = VALUES(completion)
+                """;
+        }
+        return """
+            INSERT INTO player_stats (player_id, item_count, completion, last_discovery_at)
+            VALUES (?, ?, ?, CURRENT_TIMESTAMP)
+            ON CONFLICT(player_id) DO UPDATE SET
+                last_discovery_at = CASE WHEN excluded.item_count > player_stats.item_count
+                    THEN excluded.last_discovery_at ELSE player_stats.last_discovery_at END,
+                item_count = excluded.item_count,
+                completion = excluded.completion
+            """;
+    }
+
+    // Adds a change to one player's item count, for writes that know how many rows they added
+    // or removed. A new row starts from the change. last_discovery_at moves only when the count
+    // goes up, as in statsUpsertSql.
+    public static String statsIncrementSql(boolean mysql, int collectibleItems) {
+        int total = Math.max(1, collectibleItems);
+        if (mysql) {
+            // MySQL applies the assignments in order, completion must see the new count
+            return """
+                INSERT INTO player_stats (player_id, item_count, completion, last_discovery_at)
+                VALUES (?, ?, ?, CURRENT_TIMESTAMP)
+                ON DUPLICATE KEY UPDATE
+                    last_discovery_at = IF(VALUES(item_count) > 0, VALUES(last_discovery_at), last_discovery_at),
+                    item_count = GREATEST(0, item_count + VALUES(item_count)),
+                    completion = item_count * 100.0 / %d
+                """.formatted(total);
+        }
+        return """
+            INSERT INTO player_stats (player_id, item_count, completion, last_discovery_at)
+            VALUES (?, ?, ?, CURRENT_TIMESTAMP)
+            ON CONFLICT(player_id) DO UPDATE SET
+                last_discovery_at = CASE WHEN excluded.item_count > 0
+                    THEN excluded.last_discovery_at ELSE player_stats.last_discovery_at END,
+                item_count = MAX(0, player_stats.item_count + excluded.item_count),
+                completion = MAX(0, player_stats.item_count + excluded.item_count) * 100.0 / %d
+            """.formatted(total);
+    }
+
+    // Recomputes player_stats from the collection table of the given layout. Used when the
+    // table is new and at the end of every migration.
+    public static void rebuildStats(Connection connection, boolean bitsets, int collectibleItems, Logger logger) throws SQLException {
+        String insertSql = bitsets
+                ? "INSERT INTO player_stats (player_id, item_count, completion, last_discovery_at) "
+                        + "SELECT player_id, item_count, item_count * 100.0 / ?, updated_at FROM collection_bitsets"
+                : "INSERT INTO player_stats (player_id, item_count, completion, last_discovery_at) "
+                        + "SELECT player_id, COUNT(*), COUNT(*) * 100.0 / ?, MAX(collected_at) FROM collection_items GROUP BY player_id";
+        long start = System.currentTimeMillis();
+        int players;
+
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement stmt = connection.createStatement();
+             PreparedStatement insert = connection.prepareStatement(insertSql)) {
+            stmt.executeUpdate("DELETE FROM player_stats");
+            insert.setInt(1, Math.max(1, collectibleItems));
+            players = insert.executeUpdate();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        if (players > 0) {
+            logger.info("Built leaderboard stats for " + players + " players in " + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+
+    // Moves collections stored in the other layout into the configured one, so switching
+    // database.collection-layout keeps everyone's items. Both layouts use the same material ids,
+    // so no dictionary lookups are needed. Runs in one transaction and only does work the first
+    // time the layout changes.
+    public static void convertLayout(Connection connection, boolean mysql, boolean toBitsets, Logger logger) throws SQLException {
+        String sourceTable = toBitsets ? "collection_items" : "collection_bitsets";
+        if (!hasRows(connection, sourceTable)) {
+            return;
+        }
+        logger.info("Converting collections from " + sourceTable + " to the " + (toBitsets ? "bitset" : "rows") + " layout...");
+        long start = System.currentTimeMillis();
+        int players;
+
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            players = toBitsets ? rowsToBitsets(connection, mysql) : bitsetsToRows(connection, mysql);
+            try (Statement stmt = connection.createStatement()) {
+                stmt.executeUpdate("DELETE FROM " + sourceTable);
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        logger.info("Converted collections of " + players + " players in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    private static int rowsToBitsets(Connection connection, boolean mysql) throws SQLException {
+        int players = 0;
+        try (Statement select = connection.createStatement();
+             ResultSet rs = select.executeQuery("SELECT player_id, material_id FROM collection_items ORDER BY player_id");
+             PreparedStatement existing = connection.prepareStatement("SELECT bits FROM collection_bitsets WHERE player_id = ?");
+             PreparedStatement upsert = connection.prepareStatement(bitsetUpsertSql(mysql))) {
+            int playerId = -1;
+            BitSet bits = new BitSet();
+            while (rs.next()) {
+                int rowPlayer = rs.getInt(1);
+                if (rowPlayer != playerId) {
+                    if (playerId != -1) {
+                        writeMergedBitset(existing, upsert, playerId, bits);
+                        if (++players % 500 == 0) {
+                            upsert.executeBatch();
+                        }
+                    }
+                    playerId = rowPlayer;
+                    bits = new BitSet();
+                }
+                bits.set(rs.getInt(2));
+            }
+            if (playerId != -1) {
+                writeMergedBitset(existing, upsert, playerId, bits);
+                players++;
+            }
+            upsert.executeBatch();
+        }
+        return players;
+    }
+
+    private static void writeMergedBitset(PreparedStatement existing, PreparedStatement upsert, int playerId, BitSet bits) throws SQLException {
+        existing.setInt(1, playerId);
+        try (ResultSet rs = existing.executeQuery()) {
+            if (rs.next()) {
+                bits.or(CollectionBitset.decode(rs.getBytes(1)));
+            }
+        }
+        upsert.setInt(1, playerId);
+        upsert.setInt(2, bits.cardinality());
+        upsert.setBytes(3, CollectionBitset.encode(bits));
+        upsert.addBatch();
+    }
+
+    private static int bitsetsToRows(Connection connection, boolean mysql) throws SQLException {
+        int players = 0;
+        String insertSql = (mysql ? "INSERT IGNORE" : "INSERT OR IGNORE")
+                + " INTO collection_items (player_id, material_id, collected_at) VALUES (?, ?, ?)";
+        try (Statement select = connection.createStatement();
+             ResultSet rs = select.executeQuery("SELECT player_id, bits, updated_at FROM collection_bitsets");
+             PreparedStatement insert = connection.prepareStatement(insertSql)) {
+            while (rs.next()) {
+                int playerId = rs.getInt(1);
+                BitSet bits = CollectionBitset.decode(rs.getBytes(2));
+                // Bitsets don't keep per-item times, the row's last update is the closest there is.
+                // Copied as text, like the migration does, so the stored format doesn't change.
+                String updatedAt = rs.getString(3);
+                for (int materialId = bits.nextSetBit(0); materialId >= 0; materialId = bits.nextSetBit(materialId + 1)) {
+                    insert.setInt(1, playerId);
+                    insert.setInt(2, materialId);
+                    insert.setString(3, updatedAt);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+                players++;
+            }
+        }
+        return players;
+    }
+
+    // Logs how much space and load time the compact tables save over the old one
+    private static void logComparison(Connection connection, boolean mysql, Logger logger) {
+        try {
+            long legacyMillis = timeFullRead(connection,
+                    "SELECT player_uuid, material_name FROM " + LEGACY_BACKUP_TABLE, true);
+            long compactMillis = timeFullRead(connection,
+                    "SELECT player_id, material_id FROM collection_items", false);
+            logger.info("Full collection read: " + legacyMillis + "ms before, " + compactMillis + "ms after");
+        } catch (SQLException e) {
+            logger.warning("Could not compare load times: " + e.getMessage());
+        }
+
+        String sizeSql = mysql
+                ? "SELECT table_name, data_length + index_length FROM information_schema.tables "
+                        + "WHERE table_schema = DATABASE() AND table_name IN ('" + LEGACY_BACKUP_TABLE + "', 'collection_items', 'players', 'materials')"
+                // dbstat is only available when SQLite was built with it, the comparison is skipped otherwise
+                : "SELECT m.tbl_name, SUM(s.pgsize) FROM dbstat s JOIN sqlite_master m ON m.name = s.name "
+                        + "WHERE m.tbl_name IN ('" + LEGACY_BACKUP_TABLE + "', 'collection_items', 'players', 'materials') GROUP BY m.tbl_name";
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(sizeSql)) {
+            long legacyBytes = 0;
+            long compactBytes = 0;
+            while (rs.next()) {
+                if (LEGACY_BACKUP_TABLE.equalsIgnoreCase(rs.getString(1))) {
+                    legacyBytes += rs.getLong(2);
+                } else {
+                    compactBytes += rs.getLong(2);
+                }
+            }
+            logger.info("Collection storage (tables and indexes): " + legacyBytes / 1024 + " KiB before, "
+                    + compactBytes / 1024 + " KiB after");
+        } catch (SQLException e) {
+            logger.info("Table sizes are not available on this database: " + e.getMessage());
+        }
+    }
+
+    private static long timeFullRead(Connection connection, String sql, boolean parseStrings) throws SQLException {
+        long start = System.nanoTime();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                if (parseStrings) {
+                    try {
+                        UUID.fromString(rs.getString(1));
+                        Material.valueOf(rs.getString(2));
+                    } catch (IllegalArgumentException e) {
+                        // Invalid rows cost the same to read
+                    }
+                } else {
+                    rs.getInt(1);
+                    rs.getInt(2);
+                }
+            }
+        }
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
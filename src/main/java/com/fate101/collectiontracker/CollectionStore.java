@@ -0,0 +1,96 @@
+package com.fate101.collectiontracker;
+
+import org.bukkit.Material;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// In-memory collection state shared by the event handlers and background tasks. Lookups are
+// plain ConcurrentHashMap reads, items are added with PlayerCollection's lock-free bit updates,
+// and anything that changes a player's entry is atomic per player, so the handlers can run on
+// any thread (Folia-style regionized servers, async API callers) without a global lock.
+public class CollectionStore {
+    private final CollectibleItems collectibleItems;
+    // Collections of online players (and recently online, until the unload grace period ends)
+    private final ConcurrentHashMap<UUID, PlayerCollection> collections = new ConcurrentHashMap<>();
+    // Players with notifications turned off; the value is always TRUE
+    private final ConcurrentHashMap<UUID, Boolean> notificationsDisabled = new ConcurrentHashMap<>();
+
+    public CollectionStore(CollectibleItems collectibleItems) {
+        this.collectibleItems = collectibleItems;
+    }
+
+    public PlayerCollection get(UUID playerUUID) {
+        return collections.get(playerUUID);
+    }
+
+    public boolean isLoaded(UUID playerUUID) {
+        return collections.containsKey(playerUUID);
+    }
+
+    // Returns the existing collection, or installs an empty placeholder. Threads racing here
+    // all end up with the same instance.
+    public PlayerCollection getOrCreate(UUID playerUUID) {
+        PlayerCollection collection = collections.get(playerUUID);
+        if (collection != null) {
+            return collection;
+        }
+        PlayerCollection placeholder = new PlayerCollection(collectibleItems);
+        collection = collections.putIfAbsent(playerUUID, placeholder);
+        return collection != null ? collection : placeholder;
+    }
+
+    // Installs a collection read from the database. If a placeholder is in use, the loaded
+    // items are merged into it rather than replacing it, so handlers holding the placeholder
+    // never write to a detached object. Returns the items collected while the load was running
+    // that the database didn't have yet.
+    public List<Material> install(UUID playerUUID, PlayerCollection loaded) {
+        PlayerCollection current = collections.putIfAbsent(playerUUID, loaded);
+        if (current == null) {
+            return Collections.emptyList();
+        }
+        List<Material> collectedWhileLoading = loaded.merge(current);
+        current.merge(loaded);
+        return collectedWhileLoading;
+    }
+
+    // Swaps in a freshly read collection, only if the player is still cached
+    public boolean replace(UUID playerUUID, PlayerCollection loaded) {
+        return collections.replace(playerUUID, loaded) != null;
+    }
+
+    public void remove(UUID playerUUID) {
+        collections.remove(playerUUID);
+    }
+
+    public int size() {
+        return collections.size();
+    }
+
+    // Copies every cached collection one player at a time. Handlers keep running while the
+    // copy is taken; each player's copy is internally consistent.
+    public Map<UUID, PlayerCollection> snapshot() {
+        Map<UUID, PlayerCollection> snapshot = new HashMap<>(collections.size() * 2);
+        collections.forEach((playerUUID, collection) -> snapshot.put(playerUUID, collection.snapshot()));
+        return snapshot;
+    }
+
+    public boolean isNotificationsDisabled(UUID playerUUID) {
+        return notificationsDisabled.containsKey(playerUUID);
+    }
+
+    // Flips the player's setting atomically and returns true if notifications are now disabled
+    public boolean toggleNotifications(UUID playerUUID) {
+        return notificationsDisabled.compute(playerUUID, (key, disabled) -> disabled == null ? Boolean.TRUE : null) != null;
+    }
+
+    public void loadNotificationSettings(Set<UUID> disabled) {
+        for (UUID playerUUID : disabled) {
+            notificationsDisabled.put(playerUUID, Boolean.TRUE);
+        }
+    }
+
+    public Set<UUID> getNotificationsDisabled() {
+        return Collections.unmodifiableSet(notificationsDisabled.keySet());
+    }
+}
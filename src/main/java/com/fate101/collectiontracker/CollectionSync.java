@@ -0,0 +1,140 @@
+package com.fate101.collectiontracker;
+
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+// Keeps the cached collections of servers sharing one database in step. Every collection write
+// also appends to collection_changes; this polls the log past the last id it has seen and hands
+// the other servers' changes to the main thread.
+//
+// Log ids are assigned when a row is inserted but become visible when its transaction commits,
+// so on MySQL a lower id can show up after a higher one. Ids skipped over are remembered and
+// asked for again on the next polls until GAP_TIMEOUT_MS has passed (rolled back inserts leave
+// gaps that never fill).
+//
+// Entries older than the retention period are deleted. A server that was offline longer than
+// that loads collections from the tables on startup anyway and starts reading at the end of
+// the log.
+public class CollectionSync {
+    private static final long GAP_TIMEOUT_MS = 60000;
+    private static final int MAX_GAPS = 1000;
+    private static final long COMPACT_INTERVAL_MS = 60000;
+
+    private final JavaPlugin plugin;
+    private final Logger logger;
+    private final DatabaseManager databaseManager;
+    private final Consumer<List<CollectionChange>> applier;
+
+    private final long pollIntervalTicks;
+    private final int batchSize;
+    private final long retentionMillis;
+
+    private final Object pollLock = new Object();
+    private BukkitTask pollTask;
+    private long cursor;
+    // Skipped ids, with the time they were first missed
+    private final Map<Long, Long> gaps = new LinkedHashMap<>();
+    // (time, last id read at that time) pairs, oldest first, for compaction
+    private final ArrayDeque<long[]> marks = new ArrayDeque<>();
+    private long lastCompactMillis;
+
+    public CollectionSync(JavaPlugin plugin, DatabaseManager databaseManager, Consumer<List<CollectionChange>> applier) {
+        this.plugin = plugin;
+        this.logger = plugin.getLogger();
+        this.databaseManager = databaseManager;
+        this.applier = applier;
+
+        FileConfiguration config = plugin.getConfig();
+        this.pollIntervalTicks = Math.max(1, config.getLong("sync.poll-interval-ticks", 40));
+        this.batchSize = Math.max(1, config.getInt("sync.batch-size", 1000));
+        this.retentionMillis = Math.max(1, config.getLong("sync.retention-minutes", 10)) * 60000L;
+    }
+
+    // Collections are read from the tables on startup, only changes made after that matter
+    public void start() {
+        synchronized (pollLock) {
+            cursor = databaseManager.loadLatestChangeId();
+            lastCompactMillis = System.currentTimeMillis();
+        }
+        pollTask = plugin.getServer().getScheduler().runTaskTimerAsynchronously(
+                plugin, this::poll, pollIntervalTicks, pollIntervalTicks);
+        logger.info("Cross-server sync enabled as server " + databaseManager.getServerId());
+    }
+
+    public void shutdown() {
+        if (pollTask != null) {
+            pollTask.cancel();
+            pollTask = null;
+        }
+    }
+
+    // Starts again from the end of the log, after the plugin switched to another database
+    public void reset() {
+        synchronized (pollLock) {
+            cursor = databaseManager.loadLatestChangeId();
+            gaps.clear();
+            marks.clear();
+        }
+    }
+
+    private void poll() {
+        List<CollectionChange> remote = new ArrayList<>();
+        synchronized (pollLock) {
+            long now = System.currentTimeMillis();
+            if (!gaps.isEmpty()) {
+                for (CollectionChange change : databaseManager.loadChanges(gaps.keySet())) {
+                    gaps.remove(change.getId());
+                    if (!change.isLocal()) {
+                        remote.add(change);
+                    }
+                }
+                gaps.values().removeIf(missedAt -> now - missedAt > GAP_TIMEOUT_MS);
+            }
+
+            List<CollectionChange> batch;
+            do {
+                batch = databaseManager.loadChanges(cursor, batchSize);
+                for (CollectionChange change : batch) {
+                    for (long missing = cursor + 1; missing < change.getId() && gaps.size() < MAX_GAPS; missing++) {
+                        gaps.put(missing, now);
+                    }
+                    cursor = change.getId();
+                    if (!change.isLocal()) {
+                        remote.add(change);
+                    }
+                }
+            } while (batch.size() == batchSize);
+
+            compact(now);
+        }
+
+        if (!remote.isEmpty()) {
+            plugin.getServer().getScheduler().runTask(plugin, () -> applier.accept(remote));
+        }
+    }
+
+    // Deletes entries every server has had the retention period to read
+    private void compact(long now) {
+        if (now - lastCompactMillis < COMPACT_INTERVAL_MS) {
+            return;
+        }
+        lastCompactMillis = now;
+        marks.addLast(new long[] {now, cursor});
+
+        long compactUpTo = 0;
+        while (!marks.isEmpty() && now - marks.peekFirst()[0] >= retentionMillis) {
+            compactUpTo = marks.pollFirst()[1];
+        }
+        if (compactUpTo > 0) {
+            int deleted = databaseManager.compactChanges(compactUpTo);
+            if (deleted > 0) {
+                logger.fine("Compacted " + deleted + " collection change log entries");
+            }
+        }
+    }
+}
@@ -2,19 +2,19 @@ package com.fate101.collectiontracker;
 
 import org.bukkit.Bukkit;
 import org.bukkit.Material;
+import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.entity.EntityPickupItemEvent;
 import org.bukkit.event.inventory.InventoryClickEvent;
 import org.bukkit.inventory.Inventory;
-import org.bukkit.inventory.ItemFlag;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 import org.bukkit.inventory.meta.SkullMeta;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.configuration.file.FileConfiguration;
-import org.bukkit.enchantments.Enchantment;
 import org.bukkit.event.inventory.CraftItemEvent;
 import org.bukkit.event.inventory.FurnaceExtractEvent;
 import org.bukkit.event.inventory.InventoryType;
@@ -23,25 +23,53 @@ import org.bukkit.inventory.BrewerInventory;
 import org.bukkit.inventory.MerchantInventory;
 import org.bukkit.event.player.PlayerBucketFillEvent;
 import org.bukkit.event.player.PlayerBucketEntityEvent;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.scheduler.BukkitTask;
 import org.bukkit.GameMode;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.io.File;
 import java.io.IOException;
 
 public class CollectionTracker extends JavaPlugin implements Listener {
-    private Map<UUID, Set<Material>> playerCollections;
-    private Set<UUID> notificationsDisabled;
+    // Cached collections and notification settings, safe to use from any thread
+    private CollectionStore collectionStore;
+    // Item counts for every player who has collected something, null when the leaderboard is
+    // served from the database (leaderboard.source: database)
+    private LeaderboardIndex leaderboard;
+    private Set<UUID> pendingLoads;
+    private Map<UUID, BukkitTask> unloadTasks;
+    private long unloadGraceTicks;
     private DatabaseManager databaseManager;
+    private CollectionWriteQueue writeQueue;
+    private SQLiteMaintenance sqliteMaintenance;
+    private CollectionSync collectionSync;
+    private PlayerProfileCache profileCache;
+    private CollectionGuiTemplates guiTemplates;
+    private final AtomicBoolean migrationRunning = new AtomicBoolean();
     private static final String GUI_TITLE = "Collection Tracker";
     private static final String LEADERBOARD_TITLE = "Collection Leaderboard";
     private static final int GUI_SIZE = 54; // 6 rows of inventory
     private static final int LEADERBOARD_SIZE = 54; // 6 rows of inventory
+    private static final int LEADERBOARD_ENTRIES = 44;
+    // Delay before a collection that couldn't be read is loaded again
+    private static final long LOAD_RETRY_TICKS = 20 * 5;
     private Map<UUID, Integer> playerPages;
     private Map<UUID, Integer> leaderboardPages;
-    private List<Material> collectibleItems;
-
-    private boolean isCreativeOnlyItem(Material material) {
+    // Rank from the player_stats table instead of the in-memory index
+    private boolean databaseLeaderboard;
+    private CollectibleItems collectibleItems;
+    // "New item collected" message per collectible index, built once
+    private String[] discoveryMessages;
+    private DiscoveryStats discoveryStats;
+    // Latencies, startup phases and cache sizes for /collectiontracker stats and JMX
+    private PluginMetrics metrics;
+
+    static boolean isCreativeOnlyItem(Material material) {
         // List of creative-only items and patterns
         String name = material.name().toLowerCase();
 
@@ -78,19 +106,64 @@ public class CollectionTracker extends JavaPlugin implements Listener {
                 name.contains("vex_armor_trim");        // Vex armor trim
     }
 
+    // Every obtainable item of this server version, sorted by display name
+    static List<Material> findCollectibleItems() {
+        List<Material> collectibleItems = new ArrayList<>();
+        for (Material material : Material.values()) {
+            if (material.isItem() && !material.isAir() && !isCreativeOnlyItem(material)) {
+                // Additional checks for obtainable items
+                if (material.isBlock()) {
+                    // Only add blocks that should be collectible
+                    if (!material.name().contains("INFESTED") &&    // Remove infested blocks
+                            !material.name().contains("PORTAL") &&      // Remove portal blocks
+                            !material.name().equals("BEDROCK") &&       // Remove bedrock
+                            !material.name().contains("END_PORTAL") &&  // Remove end portal frames
+                            !material.name().contains("CHORUS_FLOWER")) { // Remove chorus flower (technical block)
+                        collectibleItems.add(material);
+                    }
+                } else {
+                    // Add non-block items by default unless they're in creative-only list
+                    collectibleItems.add(material);
+                }
+            }
+        }
+
+        // Sort the items alphabetically
+        Collections.sort(collectibleItems, (a, b) ->
+                formatMaterialName(a.name()).compareTo(formatMaterialName(b.name())));
+        return collectibleItems;
+    }
+
     @Override
     public void onEnable() {
         try {
+            long enableStart = System.nanoTime();
+            metrics = new PluginMetrics(this);
             // Save default config if it doesn't exist
             saveDefaultConfig();
             
+            long phaseStart = enableStart;
+            List<Material> collectibleItems = findCollectibleItems();
+            this.collectibleItems = new CollectibleItems(collectibleItems);
+            collectionStore = new CollectionStore(this.collectibleItems);
+            guiTemplates = new CollectionGuiTemplates(this.collectibleItems, CollectionTracker::formatMaterialName);
+            discoveryMessages = new String[collectibleItems.size()];
+            for (int i = 0; i < discoveryMessages.length; i++) {
+                discoveryMessages[i] = "§a✔ New item collected: " + collectibleItems.get(i).name();
+            }
+            discoveryStats = new DiscoveryStats();
+            phaseStart = metrics.startupPhase("items", phaseStart);
+
+            // Log the total number of collectible items
+            getLogger().info("CollectionTracker initialized with " + collectibleItems.size() + " collectible items");
+            
             // Initialize database manager
-            databaseManager = new DatabaseManager(this);
+            databaseManager = new DatabaseManager(this, this.collectibleItems.size());
             if (!databaseManager.initialize()) {
                 getLogger().severe("=== CollectionTracker Database Initialization Failed ===");
                 getLogger().severe("The plugin could not connect to the database.");
                 getLogger().severe("Please check your config.yml file and ensure:");
-                getLogger().severe("1. Database type is set correctly (sqlite or mysql)");
+                getLogger().severe("1. Database type is set correctly (sqlite, mysql or journal)");
                 getLogger().severe("2. MySQL credentials are correct (if using MySQL)");
                 getLogger().severe("3. MySQL server is running and accessible (if using MySQL)");
                 getLogger().severe("4. Database file location is writable (if using SQLite)");
@@ -98,46 +171,47 @@ public class CollectionTracker extends JavaPlugin implements Listener {
                 getServer().getPluginManager().disablePlugin(this);
                 return;
             }
+            phaseStart = metrics.startupPhase("database", phaseStart);
             
-                        playerCollections = new HashMap<>();
-            notificationsDisabled = new HashSet<>();
-            playerPages = new HashMap<>();
-            leaderboardPages = new HashMap<>();
-
-            // Initialize collectible items list with filtering
-            collectibleItems = new ArrayList<>();
-            for (Material material : Material.values()) {
-                if (material.isItem() && !material.isAir() && !isCreativeOnlyItem(material)) {
-                    // Additional checks for obtainable items
-                    if (material.isBlock()) {
-                        // Only add blocks that should be collectible
-                        if (!material.name().contains("INFESTED") &&    // Remove infested blocks
-                                !material.name().contains("PORTAL") &&      // Remove portal blocks
-                                !material.name().equals("BEDROCK") &&       // Remove bedrock
-                                !material.name().contains("END_PORTAL") &&  // Remove end portal frames
-                                !material.name().contains("CHORUS_FLOWER")) { // Remove chorus flower (technical block)
-                            collectibleItems.add(material);
-                        }
-                    } else {
-                        // Add non-block items by default unless they're in creative-only list
-                        collectibleItems.add(material);
-                    }
-                }
-            }
-
-            // Sort the items alphabetically
-            Collections.sort(collectibleItems, (a, b) ->
-                    formatMaterialName(a.name()).compareTo(formatMaterialName(b.name())));
-
-            // Log the total number of collectible items
-            getLogger().info("CollectionTracker initialized with " + collectibleItems.size() + " collectible items");
+            pendingLoads = ConcurrentHashMap.newKeySet();
+            unloadTasks = new ConcurrentHashMap<>();
+            unloadGraceTicks = getConfig().getLong("performance.collection-cache.unload-grace-seconds", 300) * 20L;
+            playerPages = new ConcurrentHashMap<>();
+            leaderboardPages = new ConcurrentHashMap<>();
+            databaseLeaderboard = "database".equalsIgnoreCase(getConfig().getString("leaderboard.source", "memory"));
 
             // Migrate existing YAML data if present
             if (!databaseManager.migrateFromYaml()) {
                 getLogger().warning("Failed to migrate YAML data, but continuing with database initialization");
             }
+            phaseStart = metrics.startupPhase("yaml-migration", phaseStart);
+            
+            // Discoveries a crash left in the write-ahead log go in before anything is loaded
+            writeQueue = new CollectionWriteQueue(this, databaseManager);
+            writeQueue.recover();
+            phaseStart = metrics.startupPhase("write-ahead-log", phaseStart);
             
             loadCollections();
+            metrics.startupPhase("collections", phaseStart);
+            
+            // Collection changes are persisted in the background from here on
+            writeQueue.start();
+            
+            if ("sqlite".equals(databaseManager.getCurrentDatabaseType())) {
+                sqliteMaintenance = new SQLiteMaintenance(this, databaseManager);
+                sqliteMaintenance.start();
+            }
+            
+            if (getConfig().getBoolean("sync.enabled", false)
+                    && "journal".equals(databaseManager.getCurrentDatabaseType())) {
+                getLogger().warning("Cross-server sync needs a shared SQL database, it is not started with the journal backend");
+            } else if (getConfig().getBoolean("sync.enabled", false)) {
+                collectionSync = new CollectionSync(this, databaseManager, this::applyRemoteChanges);
+                collectionSync.start();
+            }
+            
+            metrics.register();
+            metrics.startupPhase("total", enableStart);
             
         } catch (Exception e) {
             getLogger().severe("=== CollectionTracker Initialization Failed ===");
@@ -163,7 +237,7 @@ public class CollectionTracker extends JavaPlugin implements Listener {
         getCommand("coltop").setExecutor((sender, command, label, args) -> {
             if (sender instanceof Player) {
                 Player player = (Player) sender;
-                openLeaderboardGUI(player, 0);
+                showLeaderboard(player);
                 return true;
             }
             return false;
@@ -172,17 +246,7 @@ public class CollectionTracker extends JavaPlugin implements Listener {
         getCommand("collectionnotify").setExecutor((sender, command, label, args) -> {
             if (sender instanceof Player) {
                 Player player = (Player) sender;
-                UUID playerUUID = player.getUniqueId();
-                
-                if (notificationsDisabled.contains(playerUUID)) {
-                    notificationsDisabled.remove(playerUUID);
-                    databaseManager.saveNotificationSettings(playerUUID, false);
-                    player.sendMessage("§a✔ Collection notifications enabled!");
-                } else {
-                    notificationsDisabled.add(playerUUID);
-                    databaseManager.saveNotificationSettings(playerUUID, true);
-                    player.sendMessage("§c✗ Collection notifications disabled!");
-                }
+                toggleNotifications(player);
                 return true;
             }
             return false;
@@ -194,52 +258,219 @@ public class CollectionTracker extends JavaPlugin implements Listener {
                 return true;
             }
             
-            String actualCurrentType = databaseManager.detectCurrentDatabaseType();
-            String targetType = getConfig().getString("database.type", "sqlite").toLowerCase();
-            
-            if ("none".equals(actualCurrentType)) {
-                sender.sendMessage("§cNo existing database found to migrate from.");
-                sender.sendMessage("§7The plugin will create a new " + targetType + " database on restart.");
+            if (!migrationRunning.compareAndSet(false, true)) {
+                sender.sendMessage("§eA database migration is already running.");
                 return true;
             }
             
-            if (actualCurrentType.equals(targetType)) {
-                sender.sendMessage("§eAlready using " + targetType + " database. No migration needed.");
+            sender.sendMessage("§7Checking databases...");
+            // Detection and the copy both talk to the databases, so everything runs off the main thread
+            getServer().getScheduler().runTaskAsynchronously(this, () -> {
+                try {
+                    runMigration(sender);
+                } finally {
+                    migrationRunning.set(false);
+                }
+            });
+            return true;
+        });
+
+        getCommand("collectiontracker").setExecutor((sender, command, label, args) -> {
+            if (!sender.hasPermission("collectiontracker.admin")) {
+                sender.sendMessage("§cYou don't have permission to use this command!");
                 return true;
             }
-            
-            sender.sendMessage("§eStarting migration from " + actualCurrentType + " to " + targetType + "...");
-            sender.sendMessage("§7This may take a moment depending on the amount of data.");
-            
-            boolean success = databaseManager.migrateDatabase();
-            
-            if (success) {
-                sender.sendMessage("§a✔ Migration completed successfully!");
-                sender.sendMessage("§7Your original database has been backed up.");
-                sender.sendMessage("§7Reconnecting to the new database...");
-                
-                // Reinitialize the database connection to use the new type
-                if (databaseManager.reinitialize()) {
-                    sender.sendMessage("§a✔ Successfully connected to the new database!");
-                    sender.sendMessage("§7The plugin is now using the new database type.");
+            if (args.length != 1 || !"stats".equalsIgnoreCase(args[0])) {
+                return false;
+            }
+            for (String line : metrics.getReport()) {
+                sender.sendMessage(line);
+            }
+            return true;
+        });
+    }
+
+    private void runMigration(CommandSender sender) {
+        String actualCurrentType = databaseManager.detectCurrentDatabaseType();
+        String targetType = getConfig().getString("database.type", "sqlite").toLowerCase();
+        
+        if ("none".equals(actualCurrentType)) {
+            sendSync(sender, "§cNo existing database found to migrate from.",
+                    "§7The plugin will create a new " + targetType + " database on restart.");
+            return;
+        }
+        
+        if (actualCurrentType.equals(targetType)) {
+            sendSync(sender, "§eAlready using " + targetType + " database. No migration needed.");
+            return;
+        }
+        
+        String action = new MigrationEngine(this).hasCheckpoint(actualCurrentType, targetType)
+                ? "Resuming the unfinished migration" : "Starting migration";
+        sendSync(sender, "§e" + action + " from " + actualCurrentType + " to " + targetType + "...",
+                "§7The server keeps running, progress will be shown here.");
+        
+        boolean success = databaseManager.migrateDatabase((table, rows, totalRows, rowsPerSecond) -> {
+            String eta = rowsPerSecond > 0 ? formatDuration((totalRows - rows) / rowsPerSecond) : "unknown";
+            sendSync(sender, String.format("§7Migrating %s: §e%d/%d §7rows (§e%.0f%%§7), §e%d §7rows/s, ETA §e%s",
+                    table, rows, totalRows, totalRows > 0 ? rows * 100.0 / totalRows : 100.0, rowsPerSecond, eta));
+        });
+        
+        if (!success) {
+            sendSync(sender, "§c✗ Migration failed! Check the console for details.",
+                    "§7Run the command again to resume from the last completed chunk.");
+            return;
+        }
+        
+        sendSync(sender, "§a✔ Migration completed successfully!",
+                "§7Your original database has been backed up.",
+                "§7Reconnecting to the new database...");
+        
+        // Only the pool swap itself holds up the write path; pending changes are written first
+        // and anything collected during the swap is written to the new pool afterwards
+        if (writeQueue.runPaused(databaseManager::reinitialize)) {
+            reloadAfterMigration();
+            sendSync(sender, "§a✔ Successfully connected to the new database!",
+                    "§7The plugin is now using the new database type.");
+        } else {
+            sendSync(sender, "§c⚠ Migration completed but failed to reconnect to new database.",
+                    "§7Please restart the server to use the new database type.");
+        }
+    }
+    
+    // The migrated rows weren't there when the plugin started, so counts, settings and the
+    // collections of online players are read again. Loads merge into the cached collections.
+    private void reloadAfterMigration() {
+        if (collectionSync != null) {
+            collectionSync.reset();
+        }
+        Map<UUID, Integer> counts = databaseLeaderboard
+                ? Collections.emptyMap() : databaseManager.loadCollectionCounts();
+        collectionStore.loadNotificationSettings(databaseManager.loadNotificationSettings());
+        profileCache.load();
+        getServer().getScheduler().runTask(this, () -> {
+            for (Map.Entry<UUID, Integer> entry : counts.entrySet()) {
+                if (collectionStore.isLoaded(entry.getKey())) {
+                    loadCollectionAsync(entry.getKey());
                 } else {
-                    sender.sendMessage("§c⚠ Migration completed but failed to reconnect to new database.");
-                    sender.sendMessage("§7Please restart the server to use the new database type.");
+                    leaderboard.update(entry.getKey(), entry.getValue());
                 }
-            } else {
-                sender.sendMessage("§c✗ Migration failed! Check the console for details.");
             }
-            
-            return true;
+            for (Player player : Bukkit.getOnlinePlayers()) {
+                loadCollectionAsync(player.getUniqueId());
+            }
         });
     }
+    
+    private void sendSync(CommandSender sender, String... messages) {
+        getServer().getScheduler().runTask(this, () -> {
+            for (String message : messages) {
+                sender.sendMessage(message);
+            }
+        });
+    }
+    
+    private static String formatDuration(long seconds) {
+        if (seconds < 60) {
+            return seconds + "s";
+        }
+        return (seconds / 60) + "m " + (seconds % 60) + "s";
+    }
+
+    // Read by PluginMetrics, null until onEnable got that far
+    DiscoveryStats getDiscoveryStats() {
+        return discoveryStats;
+    }
+
+    DatabaseManager getDatabaseManager() {
+        return databaseManager;
+    }
+
+    CollectibleItems getCollectibleItems() {
+        return collectibleItems;
+    }
+
+    CollectionStore getCollectionStore() {
+        return collectionStore;
+    }
+
+    LeaderboardIndex getLeaderboard() {
+        return leaderboard;
+    }
+
+    PlayerProfileCache getProfileCache() {
+        return profileCache;
+    }
+
+    CollectionWriteQueue getWriteQueue() {
+        return writeQueue;
+    }
 
     @Override
     public void onDisable() {
-        saveCollections();
+        long shutdownStart = System.nanoTime();
+        if (metrics != null) {
+            metrics.unregister();
+        }
+        if (collectionSync != null) {
+            collectionSync.shutdown();
+        }
+        if (sqliteMaintenance != null) {
+            sqliteMaintenance.shutdown();
+        }
+        // Everything else was written as it changed, only the last unflushed changes are left
+        int changedPlayers = 0;
+        int changedSettings = 0;
+        long writeMillis = 0;
+        if (writeQueue != null) {
+            changedPlayers = writeQueue.getQueueDepth();
+            changedSettings = writeQueue.getPendingSettings();
+            long writeStart = System.nanoTime();
+            writeQueue.shutdown();
+            writeMillis = (System.nanoTime() - writeStart) / 1_000_000;
+        }
+        if (discoveryStats != null) {
+            getLogger().info(discoveryStats.getSummary());
+        }
+        long closeMillis = 0;
         if (databaseManager != null) {
+            long closeStart = System.nanoTime();
             databaseManager.close();
+            closeMillis = (System.nanoTime() - closeStart) / 1_000_000;
+        }
+        getLogger().info("Shutdown took " + (System.nanoTime() - shutdownStart) / 1_000_000 + "ms: wrote "
+                + changedPlayers + " changed collections and " + changedSettings + " changed settings in "
+                + writeMillis + "ms, closed the database in " + closeMillis + "ms");
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            return;
+        }
+        UUID playerUUID = event.getUniqueId();
+        // Skip if still cached from a recent session or already being loaded
+        if (collectionStore.isLoaded(playerUUID) || !pendingLoads.add(playerUUID)) {
+            return;
         }
+        // This event runs off the main thread, so the database read can block here
+        loadCollection(playerUUID);
+    }
+
+    @EventHandler
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        profileCache.refresh(event.getPlayer());
+        BukkitTask unloadTask = unloadTasks.remove(event.getPlayer().getUniqueId());
+        if (unloadTask != null) {
+            unloadTask.cancel();
+        }
+        // Makes sure a load is running if the login prefetch was skipped
+        getCollection(event.getPlayer());
+    }
+
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        scheduleUnload(event.getPlayer().getUniqueId());
     }
 
     @EventHandler
@@ -247,289 +478,173 @@ public class CollectionTracker extends JavaPlugin implements Listener {
         if (!(event.getEntity() instanceof Player)) {
             return;
         }
+        long start = System.nanoTime();
         Player player = (Player) event.getEntity();
-        if (player.getGameMode() != GameMode.SURVIVAL) return;
-        Material material = event.getItem().getItemStack().getType();
-
-        Set<Material> collection = playerCollections.computeIfAbsent(
-                player.getUniqueId(),
-                k -> new HashSet<>()
-        );
-
-        if (!collection.contains(material)) {
-            collection.add(material);
-            if (!notificationsDisabled.contains(player.getUniqueId())) {
-                player.sendMessage("§a✔ New item collected: " + material.name());
-            }
-            databaseManager.savePlayerCollection(player.getUniqueId(), collection);
-        }
+        Material material = isCollecting(player) ? event.getItem().getItemStack().getType() : null;
+        discover(player, material, DiscoveryStats.Source.PICKUP, start);
     }
 
+    // Single entry point for every inventory click: plugin GUIs first, then the
+    // trading/brewing result slots, then items taken into the player's own inventory
     @EventHandler
     public void onInventoryClick(InventoryClickEvent event) {
         if (!(event.getWhoClicked() instanceof Player)) {
             return;
         }
+        long start = System.nanoTime();
+        Player player = (Player) event.getWhoClicked();
+        Inventory top = event.getInventory();
 
-        String title = event.getView().getTitle();
-        if (!title.startsWith(GUI_TITLE) && !title.startsWith(LEADERBOARD_TITLE)) {
+        // Plugin GUIs are always chest inventories, so other views never need a holder lookup
+        if (top.getType() == InventoryType.CHEST && top.getHolder() instanceof TrackerGuiHolder) {
+            event.setCancelled(true);
+            handleGuiClick(player, (TrackerGuiHolder) top.getHolder(), event);
             return;
         }
 
-        event.setCancelled(true);
-
-        Player player = (Player) event.getWhoClicked();
-
-        // Handle collection GUI navigation
-        if (title.startsWith(GUI_TITLE)) {
-            int currentPage = playerPages.get(player.getUniqueId());
-            if (event.getCurrentItem() != null) {
-                if (event.getSlot() == 45 && currentPage > 0) { // Previous page
-                    openCollectionGUI(player, currentPage - 1);
-                } else if (event.getSlot() == 47) { // Notification toggle
-                    UUID playerUUID = player.getUniqueId();
-                    if (notificationsDisabled.contains(playerUUID)) {
-                        notificationsDisabled.remove(playerUUID);
-                        databaseManager.saveNotificationSettings(playerUUID, false);
-                        player.sendMessage("§a✔ Collection notifications enabled!");
-                    } else {
-                        notificationsDisabled.add(playerUUID);
-                        databaseManager.saveNotificationSettings(playerUUID, true);
-                        player.sendMessage("§c✗ Collection notifications disabled!");
-                    }
-                    // Refresh the GUI to show updated toggle state
-                    openCollectionGUI(player, currentPage);
-                } else if (event.getSlot() == 53 && (currentPage + 1) * 45 < collectibleItems.size()) { // Next page
-                    openCollectionGUI(player, currentPage + 1);
+        DiscoveryStats.Source source = DiscoveryStats.Source.INVENTORY;
+        Material material = null;
+        if (isCollecting(player)) {
+            if (event.getSlotType() == InventoryType.SlotType.RESULT) {
+                // Merchant (trading) and brewing stand results
+                if (top instanceof MerchantInventory) {
+                    source = DiscoveryStats.Source.TRADE;
+                    material = typeOf(event.getCurrentItem());
+                } else if (top instanceof BrewerInventory) {
+                    source = DiscoveryStats.Source.BREW;
+                    material = typeOf(event.getCurrentItem());
+                }
+            } else {
+                // Only care about items being added to the player's inventory
+                Inventory clickedInventory = event.getClickedInventory();
+                if (clickedInventory != null && clickedInventory.equals(player.getInventory())) {
+                    material = typeOf(event.getCurrentItem());
                 }
             }
         }
-        // Leaderboard GUI - no navigation needed (single page)
-        else if (title.startsWith(LEADERBOARD_TITLE)) {
-            // No navigation for leaderboard - just cancel the event
-        }
+        discover(player, material, source, start);
     }
 
-    @EventHandler
-    public void onAnyInventoryClick(InventoryClickEvent event) {
-        if (!(event.getWhoClicked() instanceof Player)) {
-            return;
-        }
-        Player player = (Player) event.getWhoClicked();
-        if (player.getGameMode() != GameMode.SURVIVAL) return;
-        String title = event.getView().getTitle();
-        // Ignore plugin GUIs
-        if (title.startsWith(GUI_TITLE) || title.startsWith(LEADERBOARD_TITLE)) {
+    private void handleGuiClick(Player player, TrackerGuiHolder holder, InventoryClickEvent event) {
+        // Leaderboard GUI - no navigation needed (single page)
+        if (holder.getType() != TrackerGuiHolder.Type.COLLECTION) {
             return;
         }
-        // Only care about items being added to the player's inventory
-        if (event.getClickedInventory() == null || !event.getClickedInventory().equals(player.getInventory())) {
+        // Ignore clicks in the player's own inventory below the GUI
+        if (event.getRawSlot() >= GUI_SIZE || event.getCurrentItem() == null) {
             return;
         }
-        ItemStack clicked = event.getCurrentItem();
-        if (clicked == null || clicked.getType().isAir() || isCreativeOnlyItem(clicked.getType())) {
-            return;
+
+        int currentPage = holder.getPage();
+        int slot = event.getRawSlot();
+        if (slot == CollectionGuiTemplates.SLOT_PREVIOUS && currentPage > 0) { // Previous page
+            openCollectionGUI(player, currentPage - 1);
+        } else if (slot == CollectionGuiTemplates.SLOT_NOTIFICATIONS) { // Notification toggle
+            toggleNotifications(player);
+            // Refresh the GUI to show updated toggle state
+            openCollectionGUI(player, currentPage);
+        } else if (slot == CollectionGuiTemplates.SLOT_NEXT && currentPage + 1 < guiTemplates.getPageCount()) { // Next page
+            openCollectionGUI(player, currentPage + 1);
         }
-        Set<Material> collection = playerCollections.computeIfAbsent(player.getUniqueId(), k -> new HashSet<>());
-        if (!collection.contains(clicked.getType()) && collectibleItems.contains(clicked.getType())) {
-            collection.add(clicked.getType());
-            if (!notificationsDisabled.contains(player.getUniqueId())) {
-                player.sendMessage("§a✔ New item collected: " + clicked.getType().name());
-            }
-            databaseManager.savePlayerCollection(player.getUniqueId(), collection);
+    }
+
+    private void toggleNotifications(Player player) {
+        UUID playerUUID = player.getUniqueId();
+        boolean disabled = collectionStore.toggleNotifications(playerUUID);
+        // Saved with the next flush, so clicking the toggle never waits on the database
+        writeQueue.enqueueNotificationSetting(playerUUID, disabled);
+        if (disabled) {
+            player.sendMessage("§c✗ Collection notifications disabled!");
+        } else {
+            player.sendMessage("§a✔ Collection notifications enabled!");
         }
     }
 
     @EventHandler
     public void onCraftItem(CraftItemEvent event) {
         if (!(event.getWhoClicked() instanceof Player)) return;
+        long start = System.nanoTime();
         Player player = (Player) event.getWhoClicked();
-        if (player.getGameMode() != GameMode.SURVIVAL) return;
-        ItemStack result = event.getRecipe() != null ? event.getRecipe().getResult() : null;
-        if (result == null || result.getType().isAir() || isCreativeOnlyItem(result.getType())) return;
-        Set<Material> collection = playerCollections.computeIfAbsent(player.getUniqueId(), k -> new HashSet<>());
-        if (!collection.contains(result.getType()) && collectibleItems.contains(result.getType())) {
-            collection.add(result.getType());
-            if (!notificationsDisabled.contains(player.getUniqueId())) {
-                player.sendMessage("§a✔ New item collected: " + result.getType().name());
-            }
-            databaseManager.savePlayerCollection(player.getUniqueId(), collection);
-        }
+        Material material = isCollecting(player) && event.getRecipe() != null
+                ? typeOf(event.getRecipe().getResult()) : null;
+        discover(player, material, DiscoveryStats.Source.CRAFT, start);
     }
 
     @EventHandler
     public void onFurnaceExtract(FurnaceExtractEvent event) {
+        long start = System.nanoTime();
         Player player = event.getPlayer();
-        if (player.getGameMode() != GameMode.SURVIVAL) return;
-        Material type = event.getItemType();
-        if (type.isAir() || isCreativeOnlyItem(type)) return;
-        Set<Material> collection = playerCollections.computeIfAbsent(player.getUniqueId(), k -> new HashSet<>());
-        if (!collection.contains(type) && collectibleItems.contains(type)) {
-            collection.add(type);
-            if (!notificationsDisabled.contains(player.getUniqueId())) {
-                player.sendMessage("§a✔ New item collected: " + type.name());
-            }
-            databaseManager.savePlayerCollection(player.getUniqueId(), collection);
-        }
-    }
-
-    @EventHandler
-    public void onSpecialInventoryClick(InventoryClickEvent event) {
-        if (!(event.getWhoClicked() instanceof Player)) return;
-        Player player = (Player) event.getWhoClicked();
-        if (player.getGameMode() != GameMode.SURVIVAL) return;
-        String title = event.getView().getTitle();
-        if (title.startsWith(GUI_TITLE) || title.startsWith(LEADERBOARD_TITLE)) return;
-        // Merchant (trading)
-        if (event.getInventory() instanceof MerchantInventory && event.getSlotType() == InventoryType.SlotType.RESULT) {
-            ItemStack item = event.getCurrentItem();
-            if (item != null && !item.getType().isAir() && !isCreativeOnlyItem(item.getType())) {
-                Set<Material> collection = playerCollections.computeIfAbsent(player.getUniqueId(), k -> new HashSet<>());
-                if (!collection.contains(item.getType()) && collectibleItems.contains(item.getType())) {
-                    collection.add(item.getType());
-                    if (!notificationsDisabled.contains(player.getUniqueId())) {
-                        player.sendMessage("§a✔ New item collected: " + item.getType().name());
-                    }
-                    databaseManager.savePlayerCollection(player.getUniqueId(), collection);
-                }
-            }
-        }
-        // Brewing stand
-        if (event.getInventory() instanceof BrewerInventory && event.getSlotType() == InventoryType.SlotType.RESULT) {
-            ItemStack item = event.getCurrentItem();
-            if (item != null && !item.getType().isAir() && !isCreativeOnlyItem(item.getType())) {
-                Set<Material> collection = playerCollections.computeIfAbsent(player.getUniqueId(), k -> new HashSet<>());
-                if (!collection.contains(item.getType()) && collectibleItems.contains(item.getType())) {
-                    collection.add(item.getType());
-                    if (!notificationsDisabled.contains(player.getUniqueId())) {
-                        player.sendMessage("§a✔ New item collected: " + item.getType().name());
-                    }
-                    databaseManager.savePlayerCollection(player.getUniqueId(), collection);
-                }
-            }
-        }
+        discover(player, isCollecting(player) ? event.getItemType() : null, DiscoveryStats.Source.SMELT, start);
     }
 
     @EventHandler
     public void onBucketFill(PlayerBucketFillEvent event) {
+        long start = System.nanoTime();
         Player player = event.getPlayer();
-        if (player.getGameMode() != GameMode.SURVIVAL) return;
-        ItemStack filled = event.getItemStack();
-        if (filled == null || filled.getType().isAir() || isCreativeOnlyItem(filled.getType())) return;
-        Set<Material> collection = playerCollections.computeIfAbsent(player.getUniqueId(), k -> new HashSet<>());
-        if (!collection.contains(filled.getType()) && collectibleItems.contains(filled.getType())) {
-            collection.add(filled.getType());
-            if (!notificationsDisabled.contains(player.getUniqueId())) {
-                player.sendMessage("§a✔ New item collected: " + filled.getType().name());
-            }
-            databaseManager.savePlayerCollection(player.getUniqueId(), collection);
-        }
+        discover(player, isCollecting(player) ? typeOf(event.getItemStack()) : null, DiscoveryStats.Source.BUCKET, start);
     }
 
     @EventHandler
     public void onBucketEntity(PlayerBucketEntityEvent event) {
+        long start = System.nanoTime();
         Player player = event.getPlayer();
-        if (player.getGameMode() != GameMode.SURVIVAL) return;
         // Only handle milking (cow, goat, camel, etc.)
-        Material type = Material.MILK_BUCKET;
-        if (isCreativeOnlyItem(type)) return;
-        Set<Material> collection = playerCollections.computeIfAbsent(player.getUniqueId(), k -> new HashSet<>());
-        if (!collection.contains(type) && collectibleItems.contains(type)) {
-            collection.add(type);
-            if (!notificationsDisabled.contains(player.getUniqueId())) {
-                player.sendMessage("§a✔ New item collected: " + type.name());
-            }
-            databaseManager.savePlayerCollection(player.getUniqueId(), collection);
-        }
+        discover(player, isCollecting(player) ? Material.MILK_BUCKET : null, DiscoveryStats.Source.MILK, start);
     }
 
-    private void openCollectionGUI(Player player, int page) {
-        playerPages.put(player.getUniqueId(), page);
-
-        Inventory gui = Bukkit.createInventory(null, GUI_SIZE, GUI_TITLE + " - Page " + (page + 1));
-        Set<Material> collection = playerCollections.getOrDefault(player.getUniqueId(), new HashSet<>());
-
-        // Calculate start and end index for current page
-        int startIndex = page * 45;
-        int endIndex = Math.min(startIndex + 45, collectibleItems.size());
-
-        // Add items for current page
-        for (int i = startIndex; i < endIndex; i++) {
-            Material material = collectibleItems.get(i);
-            ItemStack item = new ItemStack(material);
-            ItemMeta meta = item.getItemMeta();
-
-            if (meta != null) {
-                // Set item name and lore
-                meta.setDisplayName("§f" + formatMaterialName(material.name()));
-                List<String> lore = new ArrayList<>();
-
-                if (collection.contains(material)) {
-                    lore.add("§aCollected!");
-                    meta.addEnchant(Enchantment.UNBREAKING, 1, true);
-                    meta.addItemFlags(ItemFlag.HIDE_ENCHANTS);
-                } else {
-                    lore.add("§cNot collected");
+    // Shared path for every discovery source. The "already collected" check is a bit lookup,
+    // so repeat events cost no allocation; persistence, the notification and the leaderboard
+    // update only happen for an item the player didn't have yet.
+    private void discover(Player player, Material material, DiscoveryStats.Source source, long startNanos) {
+        boolean discovered = false;
+        int index = material != null ? collectibleItems.indexOf(material) : -1;
+        if (index >= 0) {
+            PlayerCollection collection = getCollection(player);
+            if (collection.set(index)) {
+                UUID playerUUID = player.getUniqueId();
+                if (shouldNotify(playerUUID)) {
+                    player.sendMessage(discoveryMessages[index]);
                 }
-
-                meta.setLore(lore);
-                item.setItemMeta(meta);
+                writeQueue.enqueue(playerUUID, material);
+                if (!databaseLeaderboard) {
+                    leaderboard.update(playerUUID, collection);
+                }
+                discovered = true;
             }
-
-            gui.setItem(i - startIndex, item);
         }
+        discoveryStats.record(source, startNanos, discovered);
+    }
 
-        // Add navigation buttons
-        if (page > 0) {
-            ItemStack prevPage = new ItemStack(Material.ARROW);
-            ItemMeta prevMeta = prevPage.getItemMeta();
-            prevMeta.setDisplayName("§ePrevious Page");
-            prevPage.setItemMeta(prevMeta);
-            gui.setItem(45, prevPage);
-        }
+    private static boolean isCollecting(Player player) {
+        return player.getGameMode() == GameMode.SURVIVAL;
+    }
 
-        if ((page + 1) * 45 < collectibleItems.size()) {
-            ItemStack nextPage = new ItemStack(Material.ARROW);
-            ItemMeta nextMeta = nextPage.getItemMeta();
-            nextMeta.setDisplayName("§eNext Page");
-            nextPage.setItemMeta(nextMeta);
-            gui.setItem(53, nextPage);
-        }
+    private static Material typeOf(ItemStack item) {
+        return item != null ? item.getType() : null;
+    }
 
-        // Add collection statistics
-        ItemStack stats = new ItemStack(Material.BOOK);
-        ItemMeta statsMeta = stats.getItemMeta();
-        statsMeta.setDisplayName("§6Collection Statistics");
-        List<String> statsLore = new ArrayList<>();
-        statsLore.add("§7Items Collected: §e" + collection.size());
-        statsLore.add("§7Total Items: §e" + collectibleItems.size());
-        statsLore.add("§7Completion: §e" +
-                String.format("%.1f%%", (collection.size() * 100.0) / collectibleItems.size()));
-        statsMeta.setLore(statsLore);
-        stats.setItemMeta(statsMeta);
-        gui.setItem(49, stats);
+    private void openCollectionGUI(Player player, int page) {
+        long start = System.nanoTime();
+        playerPages.put(player.getUniqueId(), page);
 
-        // Add notification toggle button
-        ItemStack notifyToggle = new ItemStack(notificationsDisabled.contains(player.getUniqueId()) ? Material.BARRIER : Material.BELL);
-        ItemMeta notifyMeta = notifyToggle.getItemMeta();
-        notifyMeta.setDisplayName(notificationsDisabled.contains(player.getUniqueId()) ? "§cNotifications Disabled" : "§aNotifications Enabled");
-        List<String> notifyLore = new ArrayList<>();
-        notifyLore.add("§7Click to toggle collection notifications");
-        if (notificationsDisabled.contains(player.getUniqueId())) {
-            notifyLore.add("§cCurrently disabled");
-            notifyLore.add("§7You won't see collection messages");
-        } else {
-            notifyLore.add("§aCurrently enabled");
-            notifyLore.add("§7You'll see collection messages");
+        TrackerGuiHolder holder = new TrackerGuiHolder(TrackerGuiHolder.Type.COLLECTION, page);
+        Inventory gui = Bukkit.createInventory(holder, GUI_SIZE, GUI_TITLE + " - Page " + (page + 1));
+        holder.setInventory(gui);
+        PlayerCollection collection = collectionStore.get(player.getUniqueId());
+        if (collection == null) {
+            collection = new PlayerCollection(collectibleItems);
         }
-        notifyMeta.setLore(notifyLore);
-        notifyToggle.setItemMeta(notifyMeta);
-        gui.setItem(47, notifyToggle);
+
+        // Items, navigation and toggle buttons are prebuilt, only the statistics book is created per render
+        ItemStack[] contents = new ItemStack[GUI_SIZE];
+        guiTemplates.fillPage(contents, collection, page, collectionStore.isNotificationsDisabled(player.getUniqueId()));
+        gui.setContents(contents);
+        metrics.collectionGuiBuilt(start);
 
         player.openInventory(gui);
     }
 
-    private String formatMaterialName(String name) {
+    static String formatMaterialName(String name) {
         String[] words = name.toLowerCase().split("_");
         StringBuilder result = new StringBuilder();
 
@@ -544,81 +659,230 @@ public class CollectionTracker extends JavaPlugin implements Listener {
         return result.toString().trim();
     }
 
-    private void saveCollections() {
-        for (Map.Entry<UUID, Set<Material>> entry : playerCollections.entrySet()) {
-            databaseManager.savePlayerCollection(entry.getKey(), entry.getValue());
+    // Returns the player's cached collection. If it isn't loaded yet an empty placeholder is
+    // returned and a background load is started; anything collected in the meantime is merged
+    // into the loaded collection once it arrives.
+    private PlayerCollection getCollection(Player player) {
+        UUID playerUUID = player.getUniqueId();
+        PlayerCollection collection = collectionStore.get(playerUUID);
+        if (collection == null) {
+            collection = collectionStore.getOrCreate(playerUUID);
+            loadCollectionAsync(playerUUID);
+        }
+        return collection;
+    }
+
+    private void loadCollectionAsync(UUID playerUUID) {
+        if (!pendingLoads.add(playerUUID)) {
+            return;
         }
-        
-        // Save notification settings
-        for (UUID playerUUID : notificationsDisabled) {
-            databaseManager.saveNotificationSettings(playerUUID, true);
+        getServer().getScheduler().runTaskAsynchronously(this, () -> loadCollection(playerUUID));
+    }
+
+    // Reads the collection of a player in pendingLoads, off the main thread. A failed read is
+    // retried instead of installing an empty collection: the player stays pending, so nothing
+    // they pick up meanwhile is announced as new and the leaderboard keeps their stored count.
+    private void loadCollection(UUID playerUUID) {
+        PlayerCollection loaded = databaseManager.loadPlayerCollection(playerUUID, () -> new PlayerCollection(collectibleItems));
+        if (loaded != null) {
+            getServer().getScheduler().runTask(this, () -> installCollection(playerUUID, loaded));
+            return;
         }
+        getServer().getScheduler().runTaskLater(this, () -> {
+            if (Bukkit.getPlayer(playerUUID) == null) {
+                // Left, or never joined, before the database came back. What they collected is
+                // in the write queue, and a later join starts a new load.
+                pendingLoads.remove(playerUUID);
+                unloadCollection(playerUUID);
+                return;
+            }
+            getServer().getScheduler().runTaskAsynchronously(this, () -> loadCollection(playerUUID));
+        }, LOAD_RETRY_TICKS);
     }
 
-    private void loadCollections() {
-        playerCollections = databaseManager.loadAllCollections();
-        notificationsDisabled = databaseManager.loadNotificationSettings();
-        getLogger().info("Loaded " + playerCollections.size() + " player collections from database");
+    // Applies collection changes made on other servers to the collections cached here. Players
+    // that aren't cached only need their leaderboard count, which comes with the change.
+    private void applyRemoteChanges(List<CollectionChange> changes) {
+        Set<UUID> changedPlayers = new HashSet<>();
+        for (CollectionChange change : changes) {
+            UUID playerUUID = change.getPlayerUUID();
+            PlayerCollection collection = collectionStore.get(playerUUID);
+            if (collection == null) {
+                if (!databaseLeaderboard) {
+                    leaderboard.update(playerUUID, change.getItemCount());
+                }
+                continue;
+            }
+            if (change.getType() == CollectionChange.Type.RELOAD) {
+                reloadCollectionAsync(playerUUID);
+            } else if (change.getMaterial() != null) {
+                if (change.getType() == CollectionChange.Type.ADD) {
+                    collection.add(change.getMaterial());
+                } else {
+                    collection.remove(change.getMaterial());
+                }
+            }
+            changedPlayers.add(playerUUID);
+        }
+        if (databaseLeaderboard) {
+            return;
+        }
+        for (UUID playerUUID : changedPlayers) {
+            PlayerCollection collection = collectionStore.get(playerUUID);
+            if (collection != null) {
+                leaderboard.update(playerUUID, collection);
+            }
+        }
     }
 
-    // Leaderboard methods
-    private List<LeaderboardEntry> getLeaderboardEntries() {
-        List<LeaderboardEntry> entries = new ArrayList<>();
-        
-        for (Map.Entry<UUID, Set<Material>> entry : playerCollections.entrySet()) {
-            UUID playerUUID = entry.getKey();
-            Set<Material> collection = entry.getValue();
-            
-            // Get player name
-            String playerName = "Unknown Player";
-            Player player = Bukkit.getPlayer(playerUUID);
-            if (player != null) {
-                playerName = player.getName();
-            } else {
-                // Try to get offline player name
-                try {
-                    playerName = Bukkit.getOfflinePlayer(playerUUID).getName();
-                    if (playerName == null) {
-                        playerName = "Unknown Player";
-                    }
-                } catch (Exception e) {
-                    playerName = "Unknown Player";
+    // Replaces the cached collection with a fresh read. Unlike a login load this drops items
+    // the database no longer has, for collections rewritten by a repair on another server.
+    private void reloadCollectionAsync(UUID playerUUID) {
+        getServer().getScheduler().runTaskAsynchronously(this, () -> {
+            PlayerCollection loaded = databaseManager.loadPlayerCollection(playerUUID, () -> new PlayerCollection(collectibleItems));
+            if (loaded == null) {
+                // Better the cached collection than an empty one, the read already logged the error
+                return;
+            }
+            getServer().getScheduler().runTask(this, () -> {
+                if (collectionStore.replace(playerUUID, loaded) && !databaseLeaderboard) {
+                    leaderboard.update(playerUUID, loaded);
                 }
+            });
+        });
+    }
+
+    private void installCollection(UUID playerUUID, PlayerCollection loaded) {
+        // Items picked up before the load finished; only the ones not already stored are new
+        List<Material> collectedWhileLoading = collectionStore.install(playerUUID, loaded);
+        pendingLoads.remove(playerUUID);
+        Player player = Bukkit.getPlayer(playerUUID);
+
+        if (player != null && !collectionStore.isNotificationsDisabled(playerUUID)) {
+            for (Material material : collectedWhileLoading) {
+                player.sendMessage(discoveryMessages[collectibleItems.indexOf(material)]);
             }
-            
-            double completionPercentage = (collection.size() * 100.0) / collectibleItems.size();
-            entries.add(new LeaderboardEntry(playerUUID, playerName, collection.size(), completionPercentage));
         }
-        
-        // Sort by completion percentage (highest first), then by items collected (highest first)
-        entries.sort((a, b) -> {
-            int completionCompare = Double.compare(b.completionPercentage, a.completionPercentage);
-            if (completionCompare != 0) {
-                return completionCompare;
+        if (!databaseLeaderboard) {
+            leaderboard.update(playerUUID, collectionStore.get(playerUUID));
+        }
+
+        // The login was cancelled after the prefetch, don't keep the collection around
+        if (player == null) {
+            scheduleUnload(playerUUID);
+        }
+    }
+
+    private boolean shouldNotify(UUID playerUUID) {
+        // While the collection is loading we can't tell whether an item is new,
+        // installCollection sends the message once the load completes
+        return !collectionStore.isNotificationsDisabled(playerUUID) && !pendingLoads.contains(playerUUID);
+    }
+
+    private void scheduleUnload(UUID playerUUID) {
+        BukkitTask previous = unloadTasks.put(playerUUID,
+                getServer().getScheduler().runTaskLater(this, () -> unloadCollection(playerUUID), unloadGraceTicks));
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    private void unloadCollection(UUID playerUUID) {
+        unloadTasks.remove(playerUUID);
+        if (Bukkit.getPlayer(playerUUID) != null || pendingLoads.contains(playerUUID)) {
+            return;
+        }
+        // Pending changes stay in the write queue and the leaderboard keeps the count,
+        // so the collection can be dropped right away
+        collectionStore.remove(playerUUID);
+        playerPages.remove(playerUUID);
+        leaderboardPages.remove(playerUUID);
+    }
+
+    private void loadCollections() {
+        // Full collections are loaded per player on login, only the counts are needed up front
+        if (databaseLeaderboard) {
+            // Ranked by the database, so no index is kept in memory at all
+            getLogger().info("Leaderboard is served from the database");
+        } else {
+            leaderboard = new LeaderboardIndex(collectibleItems.size());
+            for (Map.Entry<UUID, Integer> entry : databaseManager.loadCollectionCounts().entrySet()) {
+                leaderboard.update(entry.getKey(), entry.getValue());
             }
-            return Integer.compare(b.itemsCollected, a.itemsCollected);
+            getLogger().info("Found " + leaderboard.getParticipants() + " player collections in database");
+        }
+        collectionStore.loadNotificationSettings(databaseManager.loadNotificationSettings());
+
+        profileCache = new PlayerProfileCache(this, databaseManager);
+        profileCache.load();
+
+        // Players already online after a reload
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            profileCache.refresh(player);
+            loadCollectionAsync(player.getUniqueId());
+        }
+    }
+
+    // Leaderboard methods
+    private void showLeaderboard(Player player) {
+        if (!databaseLeaderboard) {
+            openLeaderboardGUI(player, 0, memoryLeaderboardView(player.getUniqueId()));
+            return;
+        }
+        // Queried off the server thread, the GUI opens once the results are in
+        UUID viewerUUID = player.getUniqueId();
+        getServer().getScheduler().runTaskAsynchronously(this, () -> {
+            LeaderboardView view = databaseLeaderboardView(viewerUUID);
+            getServer().getScheduler().runTask(this, () -> {
+                if (player.isOnline()) {
+                    openLeaderboardGUI(player, 0, view);
+                }
+            });
         });
-        
+    }
+
+    private LeaderboardView memoryLeaderboardView(UUID viewerUUID) {
+        Map<UUID, Integer> top = new LinkedHashMap<>();
+        for (UUID playerUUID : leaderboard.getTop(LEADERBOARD_ENTRIES)) {
+            top.put(playerUUID, leaderboard.getCount(playerUUID));
+        }
+        return new LeaderboardView(top, leaderboard.getCount(viewerUUID), leaderboard.getRank(viewerUUID),
+                leaderboard.getParticipants(), leaderboard.getTopCount(), leaderboard.getAverageCount());
+    }
+
+    // Global across every server sharing the database, without loading any collections
+    private LeaderboardView databaseLeaderboardView(UUID viewerUUID) {
+        Map<UUID, Integer> top = databaseManager.loadTopCounts(LEADERBOARD_ENTRIES);
+        DatabaseManager.LeaderboardSummary summary = databaseManager.loadLeaderboardSummary(viewerUUID);
+        return new LeaderboardView(top, summary.getViewerCount(), summary.getViewerRank(),
+                summary.getParticipants(), summary.getTopCount(), summary.getAverageCount());
+    }
+
+    private List<LeaderboardEntry> getLeaderboardEntries(LeaderboardView view) {
+        List<LeaderboardEntry> entries = new ArrayList<>();
+        for (Map.Entry<UUID, Integer> entry : view.top.entrySet()) {
+            entries.add(createLeaderboardEntry(entry.getKey(), entry.getValue()));
+        }
         return entries;
     }
 
-    private void openLeaderboardGUI(Player player, int page) {
+    private LeaderboardEntry createLeaderboardEntry(UUID playerUUID, int itemsCollected) {
+        // Names come from the cache so rendering never waits on a profile lookup
+        String playerName = profileCache.getName(playerUUID);
+        double completionPercentage = (itemsCollected * 100.0) / collectibleItems.size();
+        return new LeaderboardEntry(playerUUID, playerName, itemsCollected, completionPercentage);
+    }
+
+    private void openLeaderboardGUI(Player player, int page, LeaderboardView view) {
+        long start = System.nanoTime();
         leaderboardPages.put(player.getUniqueId(), page);
         
-        List<LeaderboardEntry> entries = getLeaderboardEntries();
-        Inventory gui = Bukkit.createInventory(null, LEADERBOARD_SIZE, LEADERBOARD_TITLE);
-        
-        // Find the viewing player's entry
-        LeaderboardEntry viewingPlayerEntry = null;
-        for (LeaderboardEntry entry : entries) {
-            if (entry.playerUUID.equals(player.getUniqueId())) {
-                viewingPlayerEntry = entry;
-                break;
-            }
-        }
-        
         // Show top 44 entries (leaving space for viewing player if needed)
-        int entriesToShow = Math.min(44, entries.size());
+        List<LeaderboardEntry> entries = getLeaderboardEntries(view);
+        TrackerGuiHolder holder = new TrackerGuiHolder(TrackerGuiHolder.Type.LEADERBOARD, page);
+        Inventory gui = Bukkit.createInventory(holder, LEADERBOARD_SIZE, LEADERBOARD_TITLE);
+        holder.setInventory(gui);
+        int entriesToShow = entries.size();
         
         // Add leaderboard entries
         for (int i = 0; i < entriesToShow; i++) {
@@ -631,7 +895,7 @@ public class CollectionTracker extends JavaPlugin implements Listener {
             if (meta != null) {
                 // Set the player head to the correct player skin
                 try {
-                    meta.setOwningPlayer(Bukkit.getOfflinePlayer(entry.playerUUID));
+                    meta.setOwnerProfile(profileCache.getProfile(entry.playerUUID));
                 } catch (Exception e) {
                     getLogger().warning("Could not set player head for " + entry.playerName);
                 }
@@ -660,7 +924,8 @@ public class CollectionTracker extends JavaPlugin implements Listener {
             gui.setItem(i, item);
         }
         // Add viewing player in bottom right if they're not already shown
-        if (viewingPlayerEntry != null) {
+        int actualRank = view.viewerRank;
+        if (actualRank > 0) {
             boolean playerAlreadyShown = false;
             for (int i = 0; i < entriesToShow; i++) {
                 if (entries.get(i).playerUUID.equals(player.getUniqueId())) {
@@ -669,19 +934,12 @@ public class CollectionTracker extends JavaPlugin implements Listener {
                 }
             }
             if (!playerAlreadyShown) {
-                // Find the player's actual rank
-                int actualRank = 0;
-                for (int i = 0; i < entries.size(); i++) {
-                    if (entries.get(i).playerUUID.equals(player.getUniqueId())) {
-                        actualRank = i + 1;
-                        break;
-                    }
-                }
+                LeaderboardEntry viewingPlayerEntry = createLeaderboardEntry(player.getUniqueId(), view.viewerCount);
                 ItemStack item = new ItemStack(Material.PLAYER_HEAD);
                 SkullMeta meta = (SkullMeta) item.getItemMeta();
                 if (meta != null) {
                     try {
-                        meta.setOwningPlayer(Bukkit.getOfflinePlayer(viewingPlayerEntry.playerUUID));
+                        meta.setOwnerProfile(profileCache.getProfile(viewingPlayerEntry.playerUUID));
                     } catch (Exception e) {
                         getLogger().warning("Could not set player head for " + viewingPlayerEntry.playerName);
                     }
@@ -702,15 +960,17 @@ public class CollectionTracker extends JavaPlugin implements Listener {
         ItemMeta statsMeta = stats.getItemMeta();
         statsMeta.setDisplayName("§6Leaderboard Statistics");
         List<String> statsLore = new ArrayList<>();
-        statsLore.add("§7Total Participants: §e" + entries.size());
-        if (!entries.isEmpty()) {
-            statsLore.add("§7Top Completion: §e" + String.format("%.1f%%", entries.get(0).completionPercentage));
+        statsLore.add("§7Total Participants: §e" + view.participants);
+        if (view.participants > 0) {
+            statsLore.add("§7Top Completion: §e" + String.format("%.1f%%", 
+                (view.topCount * 100.0) / collectibleItems.size()));
             statsLore.add("§7Average Completion: §e" + String.format("%.1f%%", 
-                entries.stream().mapToDouble(e -> e.completionPercentage).average().orElse(0.0)));
+                (view.averageCount * 100.0) / collectibleItems.size()));
         }
         statsMeta.setLore(statsLore);
         stats.setItemMeta(statsMeta);
         gui.setItem(49, stats);
+        metrics.leaderboardGuiBuilt(start);
         
         player.openInventory(gui);
     }
@@ -724,6 +984,25 @@ public class CollectionTracker extends JavaPlugin implements Listener {
         return "§f"; // White
     }
     
+    // What one leaderboard GUI shows, read from the in-memory index or the database
+    private static class LeaderboardView {
+        final Map<UUID, Integer> top;
+        final int viewerCount;
+        final int viewerRank;
+        final int participants;
+        final int topCount;
+        final double averageCount;
+        
+        LeaderboardView(Map<UUID, Integer> top, int viewerCount, int viewerRank, int participants, int topCount, double averageCount) {
+            this.top = top;
+            this.viewerCount = viewerCount;
+            this.viewerRank = viewerRank;
+            this.participants = participants;
+            this.topCount = topCount;
+            this.averageCount = averageCount;
+        }
+    }
+    
     // Helper class for leaderboard entries
     private static class LeaderboardEntry {
         final UUID playerUUID;
@@ -0,0 +1,40 @@
+package com.fate101.collectiontracker;
+
+import java.util.Map;
+
+// The numbers behind /collectiontracker stats, registered as
+// com.fate101.collectiontracker:type=Metrics for JConsole, VisualVM or a JMX exporter.
+// Latency maps are keyed by lower case handler, operation or GUI name.
+public interface CollectionTrackerMXBean {
+    Map<String, LatencyHistogram.Snapshot> getHandlerLatencies();
+
+    Map<String, Long> getHandlerDiscoveries();
+
+    Map<String, LatencyHistogram.Snapshot> getDatabaseLatencies();
+
+    Map<String, LatencyHistogram.Snapshot> getGuiBuildLatencies();
+
+    Map<String, Long> getStartupPhaseMillis();
+
+    String getDatabaseType();
+
+    String getPoolStats();
+
+    int getCachedCollections();
+
+    int getLeaderboardPlayers();
+
+    int getCachedPlayerNames();
+
+    int getCachedProfiles();
+
+    long getEstimatedHeapBytesPerPlayer();
+
+    long getEstimatedCacheHeapBytes();
+
+    int getWriteQueueDepth();
+
+    int getPendingSettings();
+
+    long getWriteAheadLogBytes();
+}
@@ -0,0 +1,394 @@
+package com.fate101.collectiontracker;
+
+import org.bukkit.Material;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+// Write-behind queue for player collections. Event handlers hand over newly collected
+// materials and return immediately; an async task writes the pending additions to the
+// database in batches, one transaction per batch. Only players and settings that changed
+// since the last flush are written, so the periodic flush and the one on shutdown cost
+// nothing when nothing happened. The server thread never writes to the database: when too many
+// players are waiting, enqueue() only starts the next flush early.
+//
+// With the write-ahead log enabled every queued discovery is also logged to a local file, which
+// is synced before each batch and on a timer, so a batch that never reaches the database is
+// replayed on the next start. A batch that empties the queue seals the log, and the sealed part
+// is deleted as soon as that batch commits. While the database is failing the log holds the
+// changes until the database is back or the server restarts.
+public class CollectionWriteQueue {
+    private final JavaPlugin plugin;
+    private final Logger logger;
+    private final DatabaseManager databaseManager;
+
+    private final int flushIntervalTicks;
+    private final int batchSize;
+    private final int maxPending;
+    private final long slowFlushWarningMillis;
+    private final long walSyncIntervalTicks;
+
+    // Unwritten additions per player, insertion ordered so the oldest changes are flushed first
+    private final Map<UUID, Set<Material>> pending = new LinkedHashMap<>();
+    // Changed notification settings, only the latest value per player is kept
+    private final Map<UUID, Boolean> pendingSettings = new LinkedHashMap<>();
+    private final Object flushLock = new Object();
+    private BukkitTask flushTask;
+    private BukkitTask walSyncTask;
+    private volatile boolean paused;
+    // null when disabled or when the file couldn't be opened
+    private volatile WriteAheadLog writeAheadLog;
+    private volatile boolean databaseFailing;
+    // Set while an early flush is scheduled, so an overflowing queue schedules only one
+    private final AtomicBoolean earlyFlushScheduled = new AtomicBoolean();
+
+    // Statistics
+    private final AtomicLong enqueuedUpdates = new AtomicLong();
+    private final AtomicLong coalescedUpdates = new AtomicLong();
+    private final AtomicLong flushedPlayers = new AtomicLong();
+    private final AtomicLong flushedBatches = new AtomicLong();
+    private final AtomicLong flushedSettings = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong backPressureFlushes = new AtomicLong();
+    private volatile long lastFlushMillis;
+    private volatile long maxFlushMillis;
+    private volatile int lastBatchSize;
+
+    public CollectionWriteQueue(JavaPlugin plugin, DatabaseManager databaseManager) {
+        this.plugin = plugin;
+        this.logger = plugin.getLogger();
+        this.databaseManager = databaseManager;
+
+        FileConfiguration config = plugin.getConfig();
+        this.flushIntervalTicks = Math.max(1, config.getInt("performance.write-behind.flush-interval-ticks", 100));
+        this.batchSize = Math.max(1, config.getInt("performance.write-behind.batch-size", 100));
+        this.maxPending = Math.max(batchSize, config.getInt("performance.write-behind.max-pending", 5000));
+        this.slowFlushWarningMillis = config.getLong("performance.write-behind.slow-flush-warning-ms", 1000);
+        this.walSyncIntervalTicks = Math.max(1, config.getLong("performance.write-behind.write-ahead-log.sync-interval-ticks", 20));
+        if (config.getBoolean("performance.write-behind.write-ahead-log.enabled", true)) {
+            this.writeAheadLog = new WriteAheadLog(plugin.getDataFolder(), "pending-writes", logger);
+        }
+    }
+
+    // Opens the write-ahead log and writes the discoveries a crash left in it. Runs before
+    // collections are loaded, so players see them on their next login.
+    public void recover() {
+        WriteAheadLog log = writeAheadLog;
+        if (log == null) {
+            return;
+        }
+        Map<UUID, Set<Material>> recovered;
+        try {
+            recovered = log.open();
+        } catch (IOException e) {
+            logger.severe("Failed to open the write-ahead log, queued discoveries are only kept in memory: " + e.getMessage());
+            e.printStackTrace();
+            writeAheadLog = null;
+            return;
+        }
+        if (recovered.isEmpty()) {
+            return;
+        }
+
+        synchronized (pending) {
+            for (Map.Entry<UUID, Set<Material>> entry : recovered.entrySet()) {
+                pending.computeIfAbsent(entry.getKey(), key -> EnumSet.noneOf(Material.class)).addAll(entry.getValue());
+            }
+        }
+        flush();
+        if (getQueueDepth() > 0) {
+            logger.warning(getQueueDepth() + " players from the write-ahead log could not be written yet, retrying in the background");
+        } else {
+            logger.info("Wrote " + recovered.size() + " players from the write-ahead log to the database");
+        }
+    }
+
+    public void start() {
+        flushTask = plugin.getServer().getScheduler().runTaskTimerAsynchronously(
+                plugin, this::flush, flushIntervalTicks, flushIntervalTicks);
+        WriteAheadLog log = writeAheadLog;
+        if (log != null) {
+            walSyncTask = plugin.getServer().getScheduler().runTaskTimerAsynchronously(
+                    plugin, log::sync, walSyncIntervalTicks, walSyncIntervalTicks);
+        }
+    }
+
+    public void enqueue(UUID playerUUID, Material material) {
+        boolean overflow;
+
+        synchronized (pending) {
+            Set<Material> added = pending.get(playerUUID);
+            if (added == null) {
+                added = EnumSet.noneOf(Material.class);
+                pending.put(playerUUID, added);
+            } else {
+                coalescedUpdates.incrementAndGet();
+            }
+            added.add(material);
+            overflow = pending.size() > maxPending;
+            // Logged under the queue lock, so a batch that empties the queue covers everything logged before it
+            WriteAheadLog log = writeAheadLog;
+            if (log != null) {
+                log.append(playerUUID, material);
+            }
+        }
+        enqueuedUpdates.incrementAndGet();
+
+        // Back-pressure: too many players are waiting, so the next flush starts now instead of
+        // at the next interval. It runs async like every flush; meanwhile further discoveries
+        // merge into the per-player sets, which can't grow beyond one entry per player and item.
+        // Not while the database is failing, the periodic flush retries it.
+        if (overflow && !paused && !databaseFailing && plugin.isEnabled()
+                && earlyFlushScheduled.compareAndSet(false, true)) {
+            backPressureFlushes.incrementAndGet();
+            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+                earlyFlushScheduled.set(false);
+                flush();
+            });
+        }
+    }
+
+    public void enqueueNotificationSetting(UUID playerUUID, boolean disabled) {
+        synchronized (pendingSettings) {
+            pendingSettings.put(playerUUID, disabled);
+        }
+    }
+
+    public void flush() {
+        while (getQueueDepth() > 0) {
+            if (!flushBatch()) {
+                // Database is failing, leave the rest for the next interval
+                return;
+            }
+        }
+        while (getPendingSettings() > 0) {
+            if (!flushSettingsBatch()) {
+                return;
+            }
+        }
+    }
+
+    private boolean flushSettingsBatch() {
+        synchronized (flushLock) {
+            Map<UUID, Boolean> batch = new LinkedHashMap<>();
+            synchronized (pendingSettings) {
+                Iterator<Map.Entry<UUID, Boolean>> iterator = pendingSettings.entrySet().iterator();
+                while (iterator.hasNext() && batch.size() < batchSize) {
+                    Map.Entry<UUID, Boolean> entry = iterator.next();
+                    batch.put(entry.getKey(), entry.getValue());
+                    iterator.remove();
+                }
+            }
+            if (batch.isEmpty()) {
+                return true;
+            }
+
+            if (!databaseManager.saveNotificationSettings(batch)) {
+                failedBatches.incrementAndGet();
+                synchronized (pendingSettings) {
+                    // A newer toggle made while writing wins over the failed value
+                    batch.forEach(pendingSettings::putIfAbsent);
+                }
+                return false;
+            }
+            flushedSettings.addAndGet(batch.size());
+            return true;
+        }
+    }
+
+    private boolean flushBatch() {
+        synchronized (flushLock) {
+            WriteAheadLog log = writeAheadLog;
+            Map<UUID, Set<Material>> batch = new LinkedHashMap<>();
+            // Log segment this batch seals, -1 if players are left behind in the queue
+            long sealedSegment = -1;
+            synchronized (pending) {
+                Iterator<Map.Entry<UUID, Set<Material>>> iterator = pending.entrySet().iterator();
+                while (iterator.hasNext() && batch.size() < batchSize) {
+                    Map.Entry<UUID, Set<Material>> entry = iterator.next();
+                    batch.put(entry.getKey(), entry.getValue());
+                    iterator.remove();
+                }
+                // Every record logged so far is in this batch or in one already written, failed
+                // batches having been put back, so this batch's commit makes all of it redundant
+                if (log != null && !batch.isEmpty() && pending.isEmpty()) {
+                    sealedSegment = log.rotate();
+                }
+            }
+
+            if (batch.isEmpty()) {
+                return true;
+            }
+
+            if (log != null) {
+                // Everything in the batch is on disk before the database sees it
+                log.sync();
+            }
+
+            long start = System.nanoTime();
+            boolean success = databaseManager.addToPlayerCollections(batch);
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            lastFlushMillis = elapsedMillis;
+            lastBatchSize = batch.size();
+            if (elapsedMillis > maxFlushMillis) {
+                maxFlushMillis = elapsedMillis;
+            }
+
+            if (!success) {
+                if (!databaseFailing && log != null) {
+                    logger.warning("Database writes are failing, discoveries are kept in the write-ahead log until they succeed");
+                }
+                databaseFailing = true;
+                failedBatches.incrementAndGet();
+                // Put the batch back, merging with anything collected while we were writing
+                synchronized (pending) {
+                    for (Map.Entry<UUID, Set<Material>> entry : batch.entrySet()) {
+                        Set<Material> added = pending.putIfAbsent(entry.getKey(), entry.getValue());
+                        if (added != null) {
+                            added.addAll(entry.getValue());
+                        }
+                    }
+                }
+                return false;
+            }
+
+            if (databaseFailing) {
+                databaseFailing = false;
+                logger.info("Database writes succeed again, writing the discoveries queued meanwhile");
+            }
+            if (log != null && sealedSegment >= 0) {
+                log.release(sealedSegment);
+            }
+            flushedPlayers.addAndGet(batch.size());
+            flushedBatches.incrementAndGet();
+
+            if (elapsedMillis > slowFlushWarningMillis) {
+                logger.warning("Slow collection flush: " + batch.size() + " players took " + elapsedMillis
+                        + "ms (" + getQueueDepth() + " still pending)");
+            }
+            return true;
+        }
+    }
+
+    // Runs the action with the write path stopped: pending changes are written first, then no
+    // flush can start until the action returns. Handlers keep queueing in memory meanwhile,
+    // and back-pressure doesn't schedule flushes that would only wait for the pause.
+    public boolean runPaused(BooleanSupplier action) {
+        synchronized (flushLock) {
+            flush();
+            paused = true;
+            try {
+                return action.getAsBoolean();
+            } finally {
+                paused = false;
+            }
+        }
+    }
+
+    public void shutdown() {
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+        if (walSyncTask != null) {
+            walSyncTask.cancel();
+            walSyncTask = null;
+        }
+
+        flush();
+        WriteAheadLog log = writeAheadLog;
+        if (getPendingSettings() > 0) {
+            logger.severe("Could not write " + getPendingSettings() + " changed notification settings during shutdown");
+        }
+        if (getQueueDepth() > 0) {
+            if (log != null) {
+                logger.warning("Could not write " + getQueueDepth() + " pending player collections during shutdown,"
+                        + " they are kept in the write-ahead log and written on the next start");
+            } else {
+                logger.severe("Could not write " + getQueueDepth() + " pending player collections during shutdown");
+            }
+        }
+        if (log != null) {
+            log.close();
+        }
+        logger.info(getSummary());
+    }
+
+    public boolean isDatabaseFailing() {
+        return databaseFailing;
+    }
+
+    // Bytes in the write-ahead log, 0 when it's disabled
+    public long getWriteAheadLogSize() {
+        WriteAheadLog log = writeAheadLog;
+        return log != null ? log.getSize() : 0;
+    }
+
+    public int getPendingSettings() {
+        synchronized (pendingSettings) {
+            return pendingSettings.size();
+        }
+    }
+
+    public long getFlushedSettings() {
+        return flushedSettings.get();
+    }
+
+    public int getQueueDepth() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    public long getEnqueuedUpdates() {
+        return enqueuedUpdates.get();
+    }
+
+    public long getCoalescedUpdates() {
+        return coalescedUpdates.get();
+    }
+
+    public long getFlushedPlayers() {
+        return flushedPlayers.get();
+    }
+
+    public long getFlushedBatches() {
+        return flushedBatches.get();
+    }
+
+    public long getFailedBatches() {
+        return failedBatches.get();
+    }
+
+    public long getBackPressureFlushes() {
+        return backPressureFlushes.get();
+    }
+
+    public long getLastFlushMillis() {
+        return lastFlushMillis;
+    }
+
+    public long getMaxFlushMillis() {
+        return maxFlushMillis;
+    }
+
+    public int getLastBatchSize() {
+        return lastBatchSize;
+    }
+
+    public String getSummary() {
+        return "Write-behind queue: " + enqueuedUpdates.get() + " updates (" + coalescedUpdates.get() + " coalesced), "
+                + flushedPlayers.get() + " players in " + flushedBatches.get() + " batches, "
+                + flushedSettings.get() + " settings, "
+                + failedBatches.get() + " failed batches, " + backPressureFlushes.get() + " back-pressure flushes, "
+                + "max flush " + maxFlushMillis + "ms";
+    }
+}
@@ -1,33 +1,90 @@
 package com.fate101.collectiontracker;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 import org.bukkit.Material;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import java.io.File;
+import java.io.IOException;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 public class DatabaseManager {
+    // Timed operations, one latency histogram each
+    public enum Operation {
+        SAVE_COLLECTIONS,
+        REMOVE_ITEMS,
+        REPAIR_COLLECTION,
+        LOAD_COLLECTION,
+        LOAD_COUNTS,
+        LOAD_TOP,
+        LOAD_LEADERBOARD_SUMMARY,
+        LOAD_CHANGES,
+        SAVE_SETTINGS,
+        LOAD_SETTINGS,
+        SAVE_NAME,
+        LOAD_NAMES
+    }
+    
     private final JavaPlugin plugin;
     private final Logger logger;
     private final FileConfiguration config;
-    private Connection connection;
+    // Pool used for reads. For MySQL this is also the write pool; for SQLite in WAL mode it holds
+    // reader connections that never wait for the writer.
+    private volatile HikariDataSource dataSource;
+    // Pool used for writes. SQLite gets a single connection so writers never contend for the lock.
+    private volatile HikariDataSource writeDataSource;
     private final String databaseType;
+    // Collections stored as one bitset blob per player instead of one row per item
+    private final boolean bitsetLayout;
+    // Used for the completion column of player_stats
+    private final int collectibleItemCount;
+    // Collection writes are also appended to collection_changes for other servers to poll
+    private final boolean syncEnabled;
+    // Identifies this server's entries in collection_changes, new on every start
+    private final String serverId = UUID.randomUUID().toString();
+    // Material dictionary: materials.id by Material ordinal (0 when missing), and back
+    private volatile int[] materialIds = new int[0];
+    private volatile Material[] materialsById = new Material[0];
+    // players.id of players written or read since the tables were opened
+    private final Map<UUID, Integer> playerIds = new ConcurrentHashMap<>();
+    // Items per multi-row statement, two parameters each stay under SQLite's limit of 999
+    private static final int MAX_ROWS_PER_STATEMENT = 400;
+    // Materials without a dictionary id that were already warned about
+    private final Set<Material> unknownMaterials = ConcurrentHashMap.newKeySet();
+    // Storage for database.type: "journal", null for the SQL backends
+    private volatile JournalStore journal;
+    private final AtomicBoolean journalCompactionScheduled = new AtomicBoolean();
+    // Time spent in each public operation, including waiting for a pool connection
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
     
-    public DatabaseManager(JavaPlugin plugin) {
+    public DatabaseManager(JavaPlugin plugin, int collectibleItemCount) {
         this.plugin = plugin;
+        this.collectibleItemCount = collectibleItemCount;
         this.logger = plugin.getLogger();
         this.config = plugin.getConfig();
         this.databaseType = config.getString("database.type", "sqlite").toLowerCase();
+        this.bitsetLayout = "bitset".equalsIgnoreCase(config.getString("database.collection-layout", "rows"));
+        this.syncEnabled = config.getBoolean("sync.enabled", false);
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
     }
     
     public boolean initialize() {
         try {
             if ("mysql".equals(databaseType)) {
                 return initializeMySQL();
+            } else if ("journal".equals(databaseType)) {
+                return initializeJournal();
             } else {
                 return initializeSQLite();
             }
@@ -74,7 +131,7 @@ public class DatabaseManager {
                     }
                     
                     if (!materials.isEmpty()) {
-                        savePlayerCollection(playerUUID, materials);
+                        addToPlayerCollection(playerUUID, materials);
                         migratedPlayers++;
                     }
                     
@@ -111,75 +168,24 @@ public class DatabaseManager {
         try {
             logger.info("Starting migration from SQLite to MySQL...");
             
-            // Load all current data from SQLite
-            Map<UUID, Set<Material>> allCollections = loadAllCollections();
-            Set<UUID> notificationSettings = loadNotificationSettings();
-            
-            if (allCollections.isEmpty() && notificationSettings.isEmpty()) {
-                logger.info("No data to migrate from SQLite");
-                return true;
-            }
-            
-            // Create MySQL connection
-            String mysqlUrl = String.format("jdbc:mysql://%s:%d/%s?useSSL=false&serverTimezone=UTC", 
-                    mysqlHost, mysqlPort, mysqlDatabase);
-            
-            try (Connection mysqlConnection = DriverManager.getConnection(mysqlUrl, mysqlUsername, mysqlPassword)) {
+            try (Connection sqliteConnection = dataSource.getConnection();
+                 Connection mysqlConnection = openMySQLConnection(mysqlHost, mysqlPort, mysqlDatabase, mysqlUsername, mysqlPassword)) {
                 
                 // Create tables in MySQL
-                createTablesInConnection(mysqlConnection);
-                
-                // Migrate collections
-                int migratedPlayers = 0;
-                int migratedItems = 0;
-                
-                for (Map.Entry<UUID, Set<Material>> entry : allCollections.entrySet()) {
-                    UUID playerUUID = entry.getKey();
-                    Set<Material> materials = entry.getValue();
-                    
-                    // Insert collections into MySQL
-                    String insertSql = "INSERT IGNORE INTO player_collections (player_uuid, material_name) VALUES (?, ?)";
-                    try (PreparedStatement stmt = mysqlConnection.prepareStatement(insertSql)) {
-                        for (Material material : materials) {
-                            stmt.setString(1, playerUUID.toString());
-                            stmt.setString(2, material.name());
-                            stmt.executeUpdate();
-                            migratedItems++;
-                        }
-                        migratedPlayers++;
-                    }
-                }
-                
-                // Migrate notification settings
-                int migratedNotifications = 0;
-                for (UUID playerUUID : notificationSettings) {
-                    String insertSql = "INSERT IGNORE INTO player_notifications (player_uuid, notifications_disabled) VALUES (?, TRUE)";
-                    try (PreparedStatement stmt = mysqlConnection.prepareStatement(insertSql)) {
-                        stmt.setString(1, playerUUID.toString());
-                        stmt.executeUpdate();
-                        migratedNotifications++;
-                    }
-                }
+                prepareMigration(sqliteConnection, false, mysqlConnection, true);
                 
-                logger.info("MySQL migration completed successfully!");
-                logger.info("Migrated " + migratedPlayers + " players with " + migratedItems + " total items");
-                logger.info("Migrated " + migratedNotifications + " notification settings");
+                MigrationEngine.Result result = new MigrationEngine(plugin).migrate(sqliteConnection, mysqlConnection, "sqlite", "mysql");
+                logMigrationResult("MySQL", result);
+                finishMigration(mysqlConnection, true);
                 
                 // Create backup of SQLite database
-                File sqliteFile = new File(plugin.getDataFolder(), config.getString("database.sqlite.filename", "collections.db"));
-                if (sqliteFile.exists()) {
-                    File backupFile = new File(plugin.getDataFolder(), "collections.db.backup");
-                    if (sqliteFile.renameTo(backupFile)) {
-                        logger.info("SQLite database backed up to: collections.db.backup");
-                    } else {
-                        logger.warning("Could not backup SQLite database");
-                    }
-                }
-                
+                backupSQLiteFile();
                 return true;
                 
             } catch (SQLException e) {
-                logger.severe("Failed to connect to MySQL database: " + e.getMessage());
+                logger.severe("Failed to migrate to MySQL: " + e.getMessage());
+                logger.severe("Run the migration again to resume from the last committed chunk");
+                e.printStackTrace();
                 return false;
             }
             
@@ -191,6 +197,10 @@ public class DatabaseManager {
     }
     
     public boolean migrateDatabase() {
+        return migrateDatabase(null);
+    }
+    
+    public boolean migrateDatabase(MigrationEngine.ProgressListener progressListener) {
         String actualCurrentType = detectCurrentDatabaseType();
         String targetType = config.getString("database.type", "sqlite").toLowerCase();
         
@@ -205,10 +215,14 @@ public class DatabaseManager {
         }
         
         try {
-            if ("mysql".equals(targetType)) {
-                return migrateToMySQL();
+            if ("journal".equals(actualCurrentType)) {
+                return migrateFromJournal(targetType, progressListener);
+            } else if ("journal".equals(targetType)) {
+                return migrateToJournal(actualCurrentType, progressListener);
+            } else if ("mysql".equals(targetType)) {
+                return migrateToMySQL(progressListener);
             } else if ("sqlite".equals(targetType)) {
-                return migrateToSQLite();
+                return migrateToSQLite(progressListener);
             } else {
                 logger.severe("Unknown target database type: " + targetType);
                 return false;
@@ -220,89 +234,39 @@ public class DatabaseManager {
         }
     }
     
-    private boolean migrateToMySQL() {
+    private boolean migrateToMySQL(MigrationEngine.ProgressListener progressListener) {
         try {
             logger.info("Starting migration from SQLite to MySQL...");
             
-            // Load all data directly from SQLite file
-            Map<UUID, Set<Material>> allCollections = loadAllCollectionsFromSQLite();
-            Set<UUID> notificationSettings = loadNotificationSettingsFromSQLite();
-            
-            if (allCollections.isEmpty() && notificationSettings.isEmpty()) {
-                logger.info("No data to migrate from SQLite");
-                return true;
+            File sqliteFile = new File(plugin.getDataFolder(), config.getString("database.sqlite.filename", "collections.db"));
+            if (!sqliteFile.exists()) {
+                logger.warning("SQLite database file not found: " + sqliteFile.getAbsolutePath());
+                return false;
             }
             
-            // Get MySQL settings from config
-            String mysqlHost = config.getString("database.mysql.host", "localhost");
-            int mysqlPort = config.getInt("database.mysql.port", 3306);
-            String mysqlDatabase = config.getString("database.mysql.database", "collectiontracker");
-            String mysqlUsername = config.getString("database.mysql.username", "root");
-            String mysqlPassword = config.getString("database.mysql.password", "password");
-            
-            // Create MySQL connection
-            String mysqlUrl = String.format("jdbc:mysql://%s:%d/%s?useSSL=false&serverTimezone=UTC", 
-                    mysqlHost, mysqlPort, mysqlDatabase);
-            
-            try (Connection mysqlConnection = DriverManager.getConnection(mysqlUrl, mysqlUsername, mysqlPassword)) {
+            // Read directly from the SQLite file, write through a dedicated MySQL connection
+            try (Connection sqliteConnection = DriverManager.getConnection("jdbc:sqlite:" + sqliteFile.getAbsolutePath());
+                 Connection mysqlConnection = openMySQLConnection()) {
                 
                 // Create tables in MySQL
-                createTablesInConnection(mysqlConnection);
-                
-                // Migrate collections
-                int migratedPlayers = 0;
-                int migratedItems = 0;
-                
-                for (Map.Entry<UUID, Set<Material>> entry : allCollections.entrySet()) {
-                    UUID playerUUID = entry.getKey();
-                    Set<Material> materials = entry.getValue();
-                    
-                    // Insert collections into MySQL
-                    String insertSql = "INSERT IGNORE INTO player_collections (player_uuid, material_name) VALUES (?, ?)";
-                    try (PreparedStatement stmt = mysqlConnection.prepareStatement(insertSql)) {
-                        for (Material material : materials) {
-                            stmt.setString(1, playerUUID.toString());
-                            stmt.setString(2, material.name());
-                            stmt.executeUpdate();
-                            migratedItems++;
-                        }
-                        migratedPlayers++;
-                    }
-                }
+                prepareMigration(sqliteConnection, false, mysqlConnection, true);
                 
-                // Migrate notification settings
-                int migratedNotifications = 0;
-                for (UUID playerUUID : notificationSettings) {
-                    String insertSql = "INSERT IGNORE INTO player_notifications (player_uuid, notifications_disabled) VALUES (?, TRUE)";
-                    try (PreparedStatement stmt = mysqlConnection.prepareStatement(insertSql)) {
-                        stmt.setString(1, playerUUID.toString());
-                        stmt.executeUpdate();
-                        migratedNotifications++;
-                    }
-                }
-                
-                logger.info("MySQL migration completed successfully!");
-                logger.info("Migrated " + migratedPlayers + " players with " + migratedItems + " total items");
-                logger.info("Migrated " + migratedNotifications + " notification settings");
-                
-                // Create backup of SQLite database
-                File sqliteFile = new File(plugin.getDataFolder(), config.getString("database.sqlite.filename", "collections.db"));
-                if (sqliteFile.exists()) {
-                    File backupFile = new File(plugin.getDataFolder(), "collections.db.backup");
-                    if (sqliteFile.renameTo(backupFile)) {
-                        logger.info("SQLite database backed up to: collections.db.backup");
-                    } else {
-                        logger.warning("Could not backup SQLite database");
-                    }
-                }
-                
-                return true;
+                MigrationEngine.Result result = new MigrationEngine(plugin, progressListener)
+                        .migrate(sqliteConnection, mysqlConnection, "sqlite", "mysql");
+                logMigrationResult("MySQL", result);
+                finishMigration(mysqlConnection, true);
                 
             } catch (SQLException e) {
-                logger.severe("Failed to connect to MySQL database: " + e.getMessage());
+                logger.severe("Failed to migrate to MySQL: " + e.getMessage());
+                logger.severe("Run the migration again to resume from the last committed chunk");
+                e.printStackTrace();
                 return false;
             }
             
+            // Create backup of SQLite database
+            backupSQLiteFile();
+            return true;
+            
         } catch (Exception e) {
             logger.severe("Failed to migrate to MySQL: " + e.getMessage());
             e.printStackTrace();
@@ -310,89 +274,30 @@ public class DatabaseManager {
         }
     }
     
-    private boolean migrateToSQLite() {
+    private boolean migrateToSQLite(MigrationEngine.ProgressListener progressListener) {
         try {
             logger.info("Starting migration from MySQL to SQLite...");
             
-            // Get current MySQL connection details from config
-            String mysqlHost = config.getString("database.mysql.host", "localhost");
-            int mysqlPort = config.getInt("database.mysql.port", 3306);
-            String mysqlDatabase = config.getString("database.mysql.database", "collectiontracker");
-            String mysqlUsername = config.getString("database.mysql.username", "root");
-            String mysqlPassword = config.getString("database.mysql.password", "password");
-            
-            // Create MySQL connection to read from
-            String mysqlUrl = String.format("jdbc:mysql://%s:%d/%s?useSSL=false&serverTimezone=UTC", 
-                    mysqlHost, mysqlPort, mysqlDatabase);
-            
-            try (Connection mysqlConnection = DriverManager.getConnection(mysqlUrl, mysqlUsername, mysqlPassword)) {
-                
-                // Load all data from MySQL
-                Map<UUID, Set<Material>> allCollections = new HashMap<>();
-                Set<UUID> notificationSettings = new HashSet<>();
-                
-                // Load collections
-                String collectionsSql = "SELECT player_uuid, material_name FROM player_collections";
-                try (Statement stmt = mysqlConnection.createStatement();
-                     ResultSet rs = stmt.executeQuery(collectionsSql)) {
-                    
-                    while (rs.next()) {
-                        String uuidString = rs.getString("player_uuid");
-                        String materialName = rs.getString("material_name");
-                        
-                        try {
-                            UUID playerUUID = UUID.fromString(uuidString);
-                            Material material = Material.valueOf(materialName);
-                            // Additional validation: check if material is actually collectible
-                            if (material.isItem() && !material.isAir()) {
-                                allCollections.computeIfAbsent(playerUUID, k -> new HashSet<>()).add(material);
-                            } else {
-                                logger.warning("Skipping non-collectible material in MySQL: " + materialName);
-                            }
-                        } catch (IllegalArgumentException e) {
-                            logger.warning("Invalid data in MySQL - UUID: " + uuidString + ", Material: " + materialName);
-                        }
-                    }
-                }
-                
-                // Load notification settings
-                String notificationsSql = "SELECT player_uuid FROM player_notifications WHERE notifications_disabled = TRUE";
-                try (Statement stmt = mysqlConnection.createStatement();
-                     ResultSet rs = stmt.executeQuery(notificationsSql)) {
-                    
-                    while (rs.next()) {
-                        String uuidString = rs.getString("player_uuid");
-                        try {
-                            notificationSettings.add(UUID.fromString(uuidString));
-                        } catch (IllegalArgumentException e) {
-                            logger.warning("Invalid UUID in MySQL notifications: " + uuidString);
-                        }
-                    }
-                }
-                
-                if (allCollections.isEmpty() && notificationSettings.isEmpty()) {
-                    logger.info("No data to migrate from MySQL");
-                    return true;
-                }
-                
-                // Save all data to SQLite
-                for (Map.Entry<UUID, Set<Material>> entry : allCollections.entrySet()) {
-                    savePlayerCollection(entry.getKey(), entry.getValue());
-                }
+            // Written through a separate connection so the pool's single connection stays free for
+            // gameplay writes; the two take turns on the file lock between chunks
+            File sqliteFile = new File(plugin.getDataFolder(), config.getString("database.sqlite.filename", "collections.db"));
+            try (Connection mysqlConnection = openMySQLConnection();
+                 Connection sqliteConnection = DriverManager.getConnection("jdbc:sqlite:" + sqliteFile.getAbsolutePath())) {
                 
-                for (UUID playerUUID : notificationSettings) {
-                    saveNotificationSettings(playerUUID, true);
+                try (Statement stmt = sqliteConnection.createStatement()) {
+                    stmt.execute("PRAGMA busy_timeout = 5000");
                 }
-                
-                logger.info("SQLite migration completed successfully!");
-                logger.info("Migrated " + allCollections.size() + " players with " + 
-                    allCollections.values().stream().mapToInt(Set::size).sum() + " total items");
-                logger.info("Migrated " + notificationSettings.size() + " notification settings");
-                
+                prepareMigration(mysqlConnection, true, sqliteConnection, false);
+                MigrationEngine.Result result = new MigrationEngine(plugin, progressListener)
+                        .migrate(mysqlConnection, sqliteConnection, "mysql", "sqlite");
+                logMigrationResult("SQLite", result);
+                finishMigration(sqliteConnection, false);
                 return true;
                 
             } catch (SQLException e) {
-                logger.severe("Failed to connect to MySQL database: " + e.getMessage());
+                logger.severe("Failed to migrate to SQLite: " + e.getMessage());
+                logger.severe("Run the migration again to resume from the last committed chunk");
+                e.printStackTrace();
                 return false;
             }
             
@@ -403,6 +308,137 @@ public class DatabaseManager {
         }
     }
     
+    // Imports into the journal the plugin has open, so the server must already run on it
+    private boolean migrateToJournal(String sourceType, MigrationEngine.ProgressListener progressListener) {
+        JournalStore target = journal;
+        if (target == null) {
+            logger.warning("Restart the server with database.type: \"journal\" before migrating into the journal");
+            return false;
+        }
+        boolean mysqlSource = "mysql".equals(sourceType);
+        logger.info("Starting migration from " + (mysqlSource ? "MySQL" : "SQLite") + " to the journal...");
+        
+        File sqliteFile = new File(plugin.getDataFolder(), config.getString("database.sqlite.filename", "collections.db"));
+        try (Connection source = mysqlSource ? openMySQLConnection()
+                : DriverManager.getConnection("jdbc:sqlite:" + sqliteFile.getAbsolutePath())) {
+            CollectionSchema.create(source, mysqlSource);
+            CollectionSchema.upgradeLegacy(source, mysqlSource, logger);
+            new JournalMigration(plugin, progressListener).toJournal(source, mysqlSource, target);
+        } catch (SQLException | IOException e) {
+            logger.severe("Failed to migrate to the journal: " + e.getMessage());
+            logger.severe("Run the migration again, collections already copied are skipped");
+            e.printStackTrace();
+            return false;
+        }
+        
+        if (!mysqlSource) {
+            backupSQLiteFile();
+        }
+        return true;
+    }
+    
+    // Reads the journal directory with a store of its own, the server already runs on the target
+    private boolean migrateFromJournal(String targetType, MigrationEngine.ProgressListener progressListener) {
+        boolean mysqlTarget = "mysql".equals(targetType);
+        logger.info("Starting migration from the journal to " + (mysqlTarget ? "MySQL" : "SQLite") + "...");
+        
+        File directory = journalDirectory();
+        JournalStore source = createJournalStore(directory);
+        File sqliteFile = new File(plugin.getDataFolder(), config.getString("database.sqlite.filename", "collections.db"));
+        try {
+            source.open();
+            try (Connection target = mysqlTarget ? openMySQLConnection()
+                    : DriverManager.getConnection("jdbc:sqlite:" + sqliteFile.getAbsolutePath())) {
+                if (!mysqlTarget) {
+                    try (Statement stmt = target.createStatement()) {
+                        stmt.execute("PRAGMA busy_timeout = 5000");
+                    }
+                }
+                CollectionSchema.create(target, mysqlTarget);
+                CollectionSchema.upgradeLegacy(target, mysqlTarget, logger);
+                CollectionSchema.ensureMaterials(target, mysqlTarget);
+                new JournalMigration(plugin, progressListener).toSql(source, target, mysqlTarget);
+                finishMigration(target, mysqlTarget);
+            }
+        } catch (SQLException | IOException e) {
+            logger.severe("Failed to migrate from the journal: " + e.getMessage());
+            logger.severe("Run the migration again, collections already copied are skipped");
+            e.printStackTrace();
+            return false;
+        } finally {
+            try {
+                source.close();
+            } catch (IOException e) {
+                logger.warning("Could not close journal: " + e.getMessage());
+            }
+        }
+        
+        File backupDirectory = new File(directory.getParentFile(), directory.getName() + ".backup");
+        if (directory.renameTo(backupDirectory)) {
+            logger.info("Journal backed up to: " + backupDirectory.getName());
+        } else {
+            logger.warning("Could not backup journal directory");
+        }
+        return true;
+    }
+    
+    private Connection openMySQLConnection() throws SQLException {
+        return openMySQLConnection(
+                config.getString("database.mysql.host", "localhost"),
+                config.getInt("database.mysql.port", 3306),
+                config.getString("database.mysql.database", "collectiontracker"),
+                config.getString("database.mysql.username", "root"),
+                config.getString("database.mysql.password", "password"));
+    }
+    
+    private Connection openMySQLConnection(String host, int port, String database, String username, String password) throws SQLException {
+        // rewriteBatchedStatements turns each JDBC batch into multi-row INSERTs, one round trip per chunk
+        String mysqlUrl = String.format("jdbc:mysql://%s:%d/%s?useSSL=false&serverTimezone=UTC&rewriteBatchedStatements=true",
+                host, port, database);
+        return DriverManager.getConnection(mysqlUrl, username, password);
+    }
+    
+    private void logMigrationResult(String targetName, MigrationEngine.Result result) {
+        logger.info(targetName + " migration completed successfully in " + result.getElapsedMillis() + "ms!");
+        logger.info("Migrated " + result.getCollectionRows() + " collection rows and " + result.getBitsetRows()
+                + " collection bitsets for " + result.getPlayerRows() + " players, "
+                + result.getNotificationRows() + " notification settings and " + result.getProfileRows() + " player names");
+        if (result.getSkippedRows() > 0) {
+            logger.warning("Skipped " + result.getSkippedRows() + " rows with invalid UUIDs or materials");
+        }
+    }
+    
+    private void backupSQLiteFile() {
+        File sqliteFile = new File(plugin.getDataFolder(), config.getString("database.sqlite.filename", "collections.db"));
+        if (sqliteFile.exists()) {
+            File backupFile = new File(plugin.getDataFolder(), "collections.db.backup");
+            if (sqliteFile.renameTo(backupFile)) {
+                logger.info("SQLite database backed up to: collections.db.backup");
+            } else {
+                logger.warning("Could not backup SQLite database");
+            }
+        }
+    }
+    
+    private boolean initializeJournal() throws IOException {
+        JournalStore store = createJournalStore(journalDirectory());
+        store.open();
+        journal = store;
+        logger.info("Journal storage opened successfully");
+        return true;
+    }
+    
+    private File journalDirectory() {
+        return new File(plugin.getDataFolder(), config.getString("database.journal.directory", "journal"));
+    }
+    
+    private JournalStore createJournalStore(File directory) {
+        return new JournalStore(directory, logger,
+                config.getInt("database.journal.segment-records", 262144),
+                config.getInt("database.journal.compact-after-segments", 4),
+                config.getBoolean("database.journal.sync-writes", true));
+    }
+    
     private boolean initializeSQLite() throws SQLException {
         File dataFolder = plugin.getDataFolder();
         if (!dataFolder.exists()) {
@@ -412,15 +448,96 @@ public class DatabaseManager {
         String filename = config.getString("database.sqlite.filename", "collections.db");
         File dbFile = new File(dataFolder, filename);
         
-        String url = "jdbc:sqlite:" + dbFile.getAbsolutePath();
-        connection = DriverManager.getConnection(url);
+        String journalMode = config.getString("database.sqlite.journal-mode", "WAL").toUpperCase();
+        boolean wal = "WAL".equals(journalMode);
+        
+        // SQLite only allows one writer at a time, so a single pooled connection avoids SQLITE_BUSY
+        writeDataSource = openPool(createSQLitePoolConfig(dbFile, "CollectionTracker-SQLite", 1, journalMode));
+        enableIncrementalVacuum();
         
         // Create tables if they don't exist
         createTables();
-        logger.info("SQLite database initialized successfully");
+        
+        // With WAL, readers see the last committed state and never block on the writer (or it on them)
+        int readers = config.getInt("database.sqlite.reader-connections", 4);
+        if (wal && readers > 0) {
+            dataSource = openPool(createSQLitePoolConfig(dbFile, "CollectionTracker-SQLite-Read", readers, journalMode));
+        } else {
+            dataSource = writeDataSource;
+        }
+        logger.info("SQLite database initialized successfully (journal_mode=" + journalMode + ", "
+                + (dataSource != writeDataSource ? readers + " readers" : "shared reader/writer") + ")");
         return true;
     }
     
+    private HikariConfig createSQLitePoolConfig(File dbFile, String poolName, int size, String journalMode) {
+        HikariConfig poolConfig = new HikariConfig();
+        poolConfig.setPoolName(poolName);
+        poolConfig.setJdbcUrl("jdbc:sqlite:" + dbFile.getAbsolutePath());
+        poolConfig.setMaximumPoolSize(size);
+        poolConfig.setMinimumIdle(size);
+        poolConfig.setMaxLifetime(0);
+        poolConfig.setIdleTimeout(0);
+        
+        // Applied by the driver to every connection it opens
+        poolConfig.addDataSourceProperty("journal_mode", journalMode);
+        // NORMAL is durable against crashes with WAL, only a power loss can drop the last commits
+        poolConfig.addDataSourceProperty("synchronous", config.getString("database.sqlite.synchronous", "NORMAL").toUpperCase());
+        // Negative cache_size is in KiB
+        poolConfig.addDataSourceProperty("cache_size", String.valueOf(-Math.max(0, config.getInt("database.sqlite.cache-size-kb", 16384))));
+        poolConfig.addDataSourceProperty("mmap_size", String.valueOf(Math.max(0, config.getLong("database.sqlite.mmap-size", 268435456L))));
+        poolConfig.addDataSourceProperty("temp_store", "MEMORY");
+        poolConfig.addDataSourceProperty("busy_timeout", "5000");
+        return poolConfig;
+    }
+    
+    // auto_vacuum can only be changed by rebuilding the file, so existing databases are
+    // converted once with a VACUUM; after that free pages can be released in small steps
+    private void enableIncrementalVacuum() throws SQLException {
+        try (Connection connection = writeDataSource.getConnection();
+             Statement stmt = connection.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("PRAGMA auto_vacuum")) {
+                if (rs.next() && rs.getInt(1) == 2) {
+                    return;
+                }
+            }
+            long start = System.currentTimeMillis();
+            stmt.execute("PRAGMA auto_vacuum = INCREMENTAL");
+            stmt.execute("VACUUM");
+            logger.info("Enabled incremental vacuum on the SQLite database in " + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+    
+    // WAL checkpoint. PASSIVE never waits for readers, TRUNCATE also resets the WAL file.
+    public boolean checkpointWal(String mode) {
+        return runMaintenance("PRAGMA wal_checkpoint(" + mode + ")");
+    }
+    
+    // Refreshes the query planner statistics
+    public boolean analyze() {
+        return runMaintenance("ANALYZE");
+    }
+    
+    // Returns up to `pages` free pages to the file system
+    public boolean incrementalVacuum(int pages) {
+        return runMaintenance("PRAGMA incremental_vacuum(" + pages + ")");
+    }
+    
+    private boolean runMaintenance(String sql) {
+        HikariDataSource writer = writeDataSource;
+        if (writer == null || !"sqlite".equals(databaseType)) {
+            return false;
+        }
+        try (Connection connection = writer.getConnection();
+             Statement stmt = connection.createStatement()) {
+            stmt.execute(sql);
+            return true;
+        } catch (SQLException e) {
+            logger.warning("SQLite maintenance failed (" + sql + "): " + e.getMessage());
+            return false;
+        }
+    }
+    
     private boolean initializeMySQL() throws SQLException {
         String host = config.getString("database.mysql.host", "localhost");
         int port = config.getInt("database.mysql.port", 3306);
@@ -428,31 +545,65 @@ public class DatabaseManager {
         String username = config.getString("database.mysql.username", "root");
         String password = config.getString("database.mysql.password", "password");
         
-        // Build connection URL with advanced settings if configured
-        StringBuilder urlBuilder = new StringBuilder();
-        urlBuilder.append(String.format("jdbc:mysql://%s:%d/%s?useSSL=false&serverTimezone=UTC", host, port, database));
+        HikariConfig poolConfig = new HikariConfig();
+        poolConfig.setPoolName("CollectionTracker-MySQL");
+        poolConfig.setJdbcUrl(String.format("jdbc:mysql://%s:%d/%s?useSSL=false&serverTimezone=UTC", host, port, database));
+        poolConfig.setUsername(username);
+        poolConfig.setPassword(password);
         
-        // Add connection pool settings if advanced config exists
-        if (config.contains("database.mysql.advanced")) {
-            int maxPoolSize = config.getInt("database.mysql.advanced.maximum-pool-size", 10);
-            int minIdle = config.getInt("database.mysql.advanced.minimum-idle", 2);
-            int connectionTimeout = config.getInt("database.mysql.advanced.connection-timeout", 30000);
-            int idleTimeout = config.getInt("database.mysql.advanced.idle-timeout", 600000);
-            int maxLifetime = config.getInt("database.mysql.advanced.max-lifetime", 1800000);
-            
-            urlBuilder.append(String.format("&maximumPoolSize=%d&minimumIdle=%d&connectionTimeout=%d&idleTimeout=%d&maxLifetime=%d",
-                    maxPoolSize, minIdle, connectionTimeout, idleTimeout, maxLifetime));
-        }
+        // Pool sizing and timeouts from the advanced settings
+        poolConfig.setMaximumPoolSize(config.getInt("database.mysql.advanced.maximum-pool-size", 10));
+        poolConfig.setMinimumIdle(config.getInt("database.mysql.advanced.minimum-idle", 2));
+        poolConfig.setConnectionTimeout(config.getLong("database.mysql.advanced.connection-timeout", 30000));
+        poolConfig.setIdleTimeout(config.getLong("database.mysql.advanced.idle-timeout", 600000));
+        poolConfig.setMaxLifetime(config.getLong("database.mysql.advanced.max-lifetime", 1800000));
+        // Pings idle connections so MySQL's wait_timeout never closes them under us
+        poolConfig.setKeepaliveTime(config.getLong("database.mysql.advanced.keepalive-time", 300000));
+        poolConfig.setValidationTimeout(config.getLong("database.mysql.advanced.validation-timeout", 5000));
         
-        String url = urlBuilder.toString();
-        connection = DriverManager.getConnection(url, username, password);
+        // Per-connection prepared statement cache
+        poolConfig.addDataSourceProperty("cachePrepStmts", "true");
+        poolConfig.addDataSourceProperty("prepStmtCacheSize", "250");
+        poolConfig.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        poolConfig.addDataSourceProperty("useServerPrepStmts", "true");
+        poolConfig.addDataSourceProperty("rewriteBatchedStatements", "true");
+        poolConfig.addDataSourceProperty("tcpKeepAlive", "true");
+        
+        dataSource = openPool(poolConfig);
+        writeDataSource = dataSource;
         
         // Create tables if they don't exist
         createTables();
         logger.info("MySQL database initialized successfully");
+        logger.info("Connection pool: " + getPoolStats());
         return true;
     }
     
+    private HikariDataSource openPool(HikariConfig poolConfig) throws SQLException {
+        int maxAttempts = Math.max(1, config.getInt("database.connect-retries", 5));
+        long backoffMillis = Math.max(100, config.getLong("database.connect-retry-delay-ms", 1000));
+        
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return new HikariDataSource(poolConfig);
+            } catch (RuntimeException e) {
+                if (attempt >= maxAttempts) {
+                    throw new SQLException("Could not connect after " + attempt + " attempts: " + e.getMessage(), e);
+                }
+                logger.warning("Database connection attempt " + attempt + " failed: " + e.getMessage()
+                        + " - retrying in " + backoffMillis + "ms");
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while connecting to the database", interrupted);
+                }
+                // Exponential backoff, capped at 30 seconds
+                backoffMillis = Math.min(backoffMillis * 2, 30000);
+            }
+        }
+    }
+    
     private void createTables() throws SQLException {
         // Check if we need to recreate the tables due to schema changes
         if (needsTableRecreation()) {
@@ -460,51 +611,98 @@ public class DatabaseManager {
             dropTables();
         }
         
-        String createCollectionsTable;
-        String createNotificationsTable;
-        
-        if ("mysql".equals(databaseType)) {
-            // MySQL syntax
-            createCollectionsTable = """
-                CREATE TABLE IF NOT EXISTS player_collections (
-                    id INT AUTO_INCREMENT PRIMARY KEY,
-                    player_uuid VARCHAR(36) NOT NULL,
-                    material_name VARCHAR(100) NOT NULL,
-                    collected_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                    UNIQUE KEY unique_player_material (player_uuid, material_name)
-                )
-                """;
-                
-            createNotificationsTable = """
-                CREATE TABLE IF NOT EXISTS player_notifications (
-                    player_uuid VARCHAR(36) PRIMARY KEY,
-                    notifications_disabled BOOLEAN DEFAULT FALSE
-                )
-                """;
-        } else {
-            // SQLite syntax
-            createCollectionsTable = """
-                CREATE TABLE IF NOT EXISTS player_collections (
-                    id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    player_uuid VARCHAR(36) NOT NULL,
-                    material_name VARCHAR(100) NOT NULL,
-                    collected_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                    UNIQUE(player_uuid, material_name)
-                )
-                """;
-                
-            createNotificationsTable = """
-                CREATE TABLE IF NOT EXISTS player_notifications (
-                    player_uuid VARCHAR(36) PRIMARY KEY,
-                    notifications_disabled BOOLEAN DEFAULT FALSE
-                )
-                """;
+        boolean mysql = "mysql".equals(databaseType);
+        try (Connection connection = writeDataSource.getConnection()) {
+            CollectionSchema.create(connection, mysql);
+            CollectionSchema.upgradeLegacy(connection, mysql, logger);
+            CollectionSchema.ensureMaterials(connection, mysql);
+            CollectionSchema.convertLayout(connection, mysql, bitsetLayout, logger);
+            // Only for a database that predates the table, migrations rebuild it themselves
+            if (!CollectionSchema.hasRows(connection, "player_stats")) {
+                CollectionSchema.rebuildStats(connection, bitsetLayout, collectibleItemCount, logger);
+            }
+            loadMaterialDictionary(connection);
+        }
+        playerIds.clear();
+    }
+    
+    private void loadMaterialDictionary(Connection connection) throws SQLException {
+        int[] ids = new int[Material.values().length];
+        Map<Integer, Material> byId = new HashMap<>();
+        int maxId = 0;
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, material_name FROM materials")) {
+            while (rs.next()) {
+                int id = rs.getInt("id");
+                maxId = Math.max(maxId, id);
+                try {
+                    Material material = Material.valueOf(rs.getString("material_name"));
+                    ids[material.ordinal()] = id;
+                    byId.put(id, material);
+                } catch (IllegalArgumentException e) {
+                    // Added by a server running another Minecraft version
+                }
+            }
+        }
+        Material[] materials = new Material[maxId + 1];
+        byId.forEach((id, material) -> materials[id] = material);
+        materialsById = materials;
+        materialIds = ids;
+    }
+    
+    // materials.id of the material, 0 with a warning (once per material) if it has none and
+    // can't be stored
+    private int materialId(int[] ids, Material material) {
+        int id = ids[material.ordinal()];
+        if (id == 0 && unknownMaterials.add(material)) {
+            logger.warning("Material " + material.name() + " has no id in the materials table, "
+                    + "collecting it is not saved until the dictionary has an entry for it");
+        }
+        return id;
+    }
+    
+    private Material materialById(int id) {
+        Material[] materials = materialsById;
+        return id > 0 && id < materials.length ? materials[id] : null;
+    }
+    
+    // Returns the players.id of each player, adding players that aren't in the table yet. The
+    // caller caches the ids once its transaction has committed.
+    private Map<UUID, Integer> resolvePlayerIds(Connection connection, Collection<UUID> playerUUIDs) throws SQLException {
+        Map<UUID, Integer> ids = new HashMap<>();
+        List<UUID> missing = new ArrayList<>();
+        for (UUID playerUUID : playerUUIDs) {
+            Integer id = playerIds.get(playerUUID);
+            if (id != null) {
+                ids.put(playerUUID, id);
+            } else {
+                missing.add(playerUUID);
+            }
+        }
+        if (missing.isEmpty()) {
+            return ids;
         }
         
-        try (Statement stmt = connection.createStatement()) {
-            stmt.execute(createCollectionsTable);
-            stmt.execute(createNotificationsTable);
+        String insertSql = ("mysql".equals(databaseType) ? "INSERT IGNORE" : "INSERT OR IGNORE")
+                + " INTO players (player_uuid) VALUES (?)";
+        try (PreparedStatement insertStmt = connection.prepareStatement(insertSql);
+             PreparedStatement selectStmt = connection.prepareStatement("SELECT id FROM players WHERE player_uuid = ?")) {
+            for (UUID playerUUID : missing) {
+                insertStmt.setString(1, playerUUID.toString());
+                insertStmt.addBatch();
+            }
+            insertStmt.executeBatch();
+            
+            for (UUID playerUUID : missing) {
+                selectStmt.setString(1, playerUUID.toString());
+                try (ResultSet rs = selectStmt.executeQuery()) {
+                    if (rs.next()) {
+                        ids.put(playerUUID, rs.getInt(1));
+                    }
+                }
+            }
         }
+        return ids;
     }
     
     private boolean needsTableRecreation() {
@@ -515,7 +713,8 @@ public class DatabaseManager {
                 checkSql = "SELECT COUNT(*) FROM information_schema.tables WHERE table_name='player_collections'";
             }
             
-            try (Statement stmt = connection.createStatement();
+            try (Connection connection = writeDataSource.getConnection();
+                 Statement stmt = connection.createStatement();
                  ResultSet rs = stmt.executeQuery(checkSql)) {
                 
                 if (rs.next() && rs.getInt(1) > 0) {
@@ -556,98 +755,868 @@ public class DatabaseManager {
     }
     
     private void dropTables() throws SQLException {
-        try (Statement stmt = connection.createStatement()) {
-            stmt.execute("DROP TABLE IF EXISTS player_collections");
+        try (Connection connection = writeDataSource.getConnection();
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS " + CollectionSchema.LEGACY_TABLE);
             stmt.execute("DROP TABLE IF EXISTS player_notifications");
         }
     }
     
-    public void savePlayerCollection(UUID playerUUID, Set<Material> materials) {
-        String deleteSql = "DELETE FROM player_collections WHERE player_uuid = ?";
-        String insertSql;
-        
-        // Use database-specific INSERT syntax
-        if ("mysql".equals(databaseType)) {
-            insertSql = "INSERT IGNORE INTO player_collections (player_uuid, material_name) VALUES (?, ?)";
-        } else {
-            insertSql = "INSERT OR IGNORE INTO player_collections (player_uuid, material_name) VALUES (?, ?)";
+    public boolean addToPlayerCollection(UUID playerUUID, Collection<Material> materials) {
+        return addToPlayerCollections(Collections.singletonMap(playerUUID, materials));
+    }
+    
+    public boolean addToPlayerCollections(Map<UUID, ? extends Collection<Material>> additions) {
+        long start = System.nanoTime();
+        try {
+            return writeAdditions(additions);
+        } finally {
+            record(Operation.SAVE_COLLECTIONS, start);
+        }
+    }
+    
+    private boolean writeAdditions(Map<UUID, ? extends Collection<Material>> additions) {
+        if (additions.isEmpty()) {
+            return true;
+        }
+        JournalStore store = journal;
+        if (store != null) {
+            return writeJournal("save collection changes", () -> store.add(additions));
+        }
+        if (bitsetLayout) {
+            return updateBitsets(additions, true);
         }
         
-        try (PreparedStatement deleteStmt = connection.prepareStatement(deleteSql);
-             PreparedStatement insertStmt = connection.prepareStatement(insertSql)) {
-            
-            // Delete existing collections for this player
-            deleteStmt.setString(1, playerUUID.toString());
-            deleteStmt.executeUpdate();
-            
-            // Insert new collections (INSERT OR IGNORE/INSERT IGNORE handles duplicates gracefully)
-            for (Material material : materials) {
-                insertStmt.setString(1, playerUUID.toString());
-                insertStmt.setString(2, material.name());
-                insertStmt.executeUpdate();
-            }
-            
+        Map<UUID, Integer> resolved = new HashMap<>();
+        try {
+            // Only the new materials are written, existing rows keep their collected_at timestamp
+            inTransaction(connection -> {
+                resolved.putAll(resolvePlayerIds(connection, additions.keySet()));
+                int[] ids = materialIds;
+                Map<Integer, Integer> added = new HashMap<>();
+                for (Map.Entry<UUID, ? extends Collection<Material>> entry : additions.entrySet()) {
+                    Integer playerId = resolved.get(entry.getKey());
+                    if (playerId == null) {
+                        continue;
+                    }
+                    List<Integer> itemIds = new ArrayList<>(entry.getValue().size());
+                    for (Material material : entry.getValue()) {
+                        int materialId = materialId(ids, material);
+                        if (materialId != 0) {
+                            itemIds.add(materialId);
+                        }
+                    }
+                    added.put(playerId, insertItems(connection, playerId, itemIds));
+                }
+                addToStats(connection, added);
+                logChanges(connection, resolved, additions, CollectionChange.Type.ADD);
+            });
+            playerIds.putAll(resolved);
+            return true;
         } catch (SQLException e) {
-            logger.severe("Failed to save player collection: " + e.getMessage());
+            logger.severe("Failed to save collection changes for " + additions.size() + " players: " + e.getMessage());
             e.printStackTrace();
+            return false;
         }
     }
     
-    public Set<Material> loadPlayerCollection(UUID playerUUID) {
-        Set<Material> materials = new HashSet<>();
-        String sql = "SELECT material_name FROM player_collections WHERE player_uuid = ?";
+    public boolean removeFromPlayerCollection(UUID playerUUID, Collection<Material> materials) {
+        long start = System.nanoTime();
+        try {
+            return writeRemovals(playerUUID, materials);
+        } finally {
+            record(Operation.REMOVE_ITEMS, start);
+        }
+    }
+    
+    private boolean writeRemovals(UUID playerUUID, Collection<Material> materials) {
+        if (materials.isEmpty()) {
+            return true;
+        }
+        JournalStore store = journal;
+        if (store != null) {
+            return writeJournal("remove materials from player collection", () -> store.remove(playerUUID, materials));
+        }
+        if (bitsetLayout) {
+            return updateBitsets(Collections.singletonMap(playerUUID, materials), false);
+        }
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        Map<UUID, Integer> resolved = new HashMap<>();
+        try {
+            inTransaction(connection -> {
+                resolved.putAll(resolvePlayerIds(connection, Collections.singleton(playerUUID)));
+                Integer playerId = resolved.get(playerUUID);
+                if (playerId == null) {
+                    return;
+                }
+                int[] ids = materialIds;
+                List<Integer> itemIds = new ArrayList<>(materials.size());
+                for (Material material : materials) {
+                    int materialId = materialId(ids, material);
+                    if (materialId != 0) {
+                        itemIds.add(materialId);
+                    }
+                }
+                int removed = 0;
+                for (int start = 0; start < itemIds.size(); start += MAX_ROWS_PER_STATEMENT) {
+                    List<Integer> chunk = itemIds.subList(start, Math.min(itemIds.size(), start + MAX_ROWS_PER_STATEMENT));
+                    String deleteSql = "DELETE FROM collection_items WHERE player_id = ? AND material_id IN ("
+                            + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+                    try (PreparedStatement deleteStmt = connection.prepareStatement(deleteSql)) {
+                        deleteStmt.setInt(1, playerId);
+                        for (int i = 0; i < chunk.size(); i++) {
+                            deleteStmt.setInt(i + 2, chunk.get(i));
+                        }
+                        removed += deleteStmt.executeUpdate();
+                    }
+                }
+                addToStats(connection, Collections.singletonMap(playerId, -removed));
+                logChanges(connection, resolved, Collections.singletonMap(playerUUID, materials), CollectionChange.Type.REMOVE);
+            });
+            playerIds.putAll(resolved);
+            return true;
+        } catch (SQLException e) {
+            logger.severe("Failed to remove materials from player collection: " + e.getMessage());
+            e.printStackTrace();
+            return false;
+        }
+    }
+    
+    // Full rewrite of a player's stored collection. Only meant for explicit repairs, as it
+    // resets every collected_at timestamp.
+    public boolean repairPlayerCollection(UUID playerUUID, Set<Material> materials) {
+        long start = System.nanoTime();
+        try {
+            return writeRepair(playerUUID, materials);
+        } finally {
+            record(Operation.REPAIR_COLLECTION, start);
+        }
+    }
+    
+    private boolean writeRepair(UUID playerUUID, Set<Material> materials) {
+        JournalStore store = journal;
+        if (store != null) {
+            return writeJournal("repair player collection", () -> store.replace(playerUUID, materials));
+        }
+        if (bitsetLayout) {
+            return repairBitset(playerUUID, materials);
+        }
+        String deleteSql = "DELETE FROM collection_items WHERE player_id = ?";
+        
+        Map<UUID, Integer> resolved = new HashMap<>();
+        try {
+            inTransaction(connection -> {
+                resolved.putAll(resolvePlayerIds(connection, Collections.singleton(playerUUID)));
+                Integer playerId = resolved.get(playerUUID);
+                if (playerId == null) {
+                    throw new SQLException("Could not add player " + playerUUID + " to the players table");
+                }
+                int[] ids = materialIds;
+                try (PreparedStatement deleteStmt = connection.prepareStatement(deleteSql)) {
+                    // Delete existing collections for this player
+                    deleteStmt.setInt(1, playerId);
+                    deleteStmt.executeUpdate();
+                }
+                
+                // Insert new collections, the player has no rows left so every one is counted
+                List<Integer> itemIds = new ArrayList<>(materials.size());
+                for (Material material : materials) {
+                    int materialId = materialId(ids, material);
+                    if (materialId != 0) {
+                        itemIds.add(materialId);
+                    }
+                }
+                int itemCount = insertItems(connection, playerId, itemIds);
+                updateStats(connection, Collections.singletonMap(playerId, itemCount));
+                logReload(connection, playerId);
+            });
+            playerIds.putAll(resolved);
+            logger.info("Rewrote stored collection for " + playerUUID + " with " + materials.size() + " items");
+            return true;
+        } catch (SQLException e) {
+            logger.severe("Failed to repair player collection: " + e.getMessage());
+            e.printStackTrace();
+            return false;
+        }
+    }
+    
+    // Bitset layout: reads each player's blob, sets or clears the changed bits and writes it
+    // back, one row per player. The read locks the row on MySQL so two servers updating the same
+    // player don't overwrite each other's bits.
+    private boolean updateBitsets(Map<UUID, ? extends Collection<Material>> changes, boolean add) {
+        String selectSql = "SELECT bits FROM collection_bitsets WHERE player_id = ?"
+                + ("mysql".equals(databaseType) ? " FOR UPDATE" : "");
+        String upsertSql = CollectionSchema.bitsetUpsertSql("mysql".equals(databaseType));
+        
+        Map<UUID, Integer> resolved = new HashMap<>();
+        try {
+            inTransaction(connection -> {
+                resolved.putAll(resolvePlayerIds(connection, changes.keySet()));
+                int[] ids = materialIds;
+                Map<Integer, Integer> itemCounts = new HashMap<>();
+                try (PreparedStatement selectStmt = connection.prepareStatement(selectSql);
+                     PreparedStatement upsertStmt = connection.prepareStatement(upsertSql)) {
+                    for (Map.Entry<UUID, ? extends Collection<Material>> entry : changes.entrySet()) {
+                        Integer playerId = resolved.get(entry.getKey());
+                        if (playerId == null) {
+                            continue;
+                        }
+                        BitSet bits = readBitset(selectStmt, playerId);
+                        for (Material material : entry.getValue()) {
+                            int materialId = materialId(ids, material);
+                            if (materialId != 0) {
+                                bits.set(materialId, add);
+                            }
+                        }
+                        upsertStmt.setInt(1, playerId);
+                        upsertStmt.setInt(2, bits.cardinality());
+                        upsertStmt.setBytes(3, CollectionBitset.encode(bits));
+                        upsertStmt.addBatch();
+                        itemCounts.put(playerId, bits.cardinality());
+                    }
+                    upsertStmt.executeBatch();
+                }
+                updateStats(connection, itemCounts);
+                logChanges(connection, resolved, changes, add ? CollectionChange.Type.ADD : CollectionChange.Type.REMOVE);
+            });
+            playerIds.putAll(resolved);
+            return true;
+        } catch (SQLException e) {
+            logger.severe("Failed to save collection changes for " + changes.size() + " players: " + e.getMessage());
+            e.printStackTrace();
+            return false;
+        }
+    }
+    
+    private BitSet readBitset(PreparedStatement selectStmt, int playerId) throws SQLException {
+        selectStmt.setInt(1, playerId);
+        try (ResultSet rs = selectStmt.executeQuery()) {
+            if (!rs.next()) {
+                return new BitSet();
+            }
+            try {
+                return CollectionBitset.decode(rs.getBytes("bits"));
+            } catch (IllegalArgumentException e) {
+                // Refuse to write over a blob we can't read, it may be from a newer plugin version
+                throw new SQLException("Stored collection of player id " + playerId + " can't be read: " + e.getMessage(), e);
+            }
+        }
+    }
+    
+    private boolean repairBitset(UUID playerUUID, Set<Material> materials) {
+        String upsertSql = CollectionSchema.bitsetUpsertSql("mysql".equals(databaseType));
+        
+        Map<UUID, Integer> resolved = new HashMap<>();
+        try {
+            inTransaction(connection -> {
+                resolved.putAll(resolvePlayerIds(connection, Collections.singleton(playerUUID)));
+                Integer playerId = resolved.get(playerUUID);
+                if (playerId == null) {
+                    throw new SQLException("Could not add player " + playerUUID + " to the players table");
+                }
+                int[] ids = materialIds;
+                BitSet bits = new BitSet();
+                for (Material material : materials) {
+                    int materialId = materialId(ids, material);
+                    if (materialId != 0) {
+                        bits.set(materialId);
+                    }
+                }
+                try (PreparedStatement upsertStmt = connection.prepareStatement(upsertSql)) {
+                    upsertStmt.setInt(1, playerId);
+                    upsertStmt.setInt(2, bits.cardinality());
+                    upsertStmt.setBytes(3, CollectionBitset.encode(bits));
+                    upsertStmt.executeUpdate();
+                }
+                updateStats(connection, Collections.singletonMap(playerId, bits.cardinality()));
+                logReload(connection, playerId);
+            });
+            playerIds.putAll(resolved);
+            logger.info("Rewrote stored collection for " + playerUUID + " with " + materials.size() + " items");
+            return true;
+        } catch (SQLException e) {
+            logger.severe("Failed to repair player collection: " + e.getMessage());
+            e.printStackTrace();
+            return false;
+        }
+    }
+    
+    // Appends the changes to collection_changes in the caller's transaction, so other servers
+    // see them exactly when the collection tables do
+    private void logChanges(Connection connection, Map<UUID, Integer> ids,
+                            Map<UUID, ? extends Collection<Material>> changes, CollectionChange.Type type) throws SQLException {
+        if (!syncEnabled) {
+            return;
+        }
+        int[] materialIdsByOrdinal = materialIds;
+        try (PreparedStatement logStmt = connection.prepareStatement(
+                "INSERT INTO collection_changes (server_id, player_id, material_id, change_type) VALUES (?, ?, ?, ?)")) {
+            for (Map.Entry<UUID, ? extends Collection<Material>> entry : changes.entrySet()) {
+                Integer playerId = ids.get(entry.getKey());
+                if (playerId == null) {
+                    continue;
+                }
+                for (Material material : entry.getValue()) {
+                    int materialId = materialId(materialIdsByOrdinal, material);
+                    if (materialId == 0) {
+                        continue;
+                    }
+                    logStmt.setString(1, serverId);
+                    logStmt.setInt(2, playerId);
+                    logStmt.setInt(3, materialId);
+                    logStmt.setInt(4, type.ordinal());
+                    logStmt.addBatch();
+                }
+            }
+            logStmt.executeBatch();
+        }
+    }
+    
+    private void logReload(Connection connection, int playerId) throws SQLException {
+        if (!syncEnabled) {
+            return;
+        }
+        try (PreparedStatement logStmt = connection.prepareStatement(
+                "INSERT INTO collection_changes (server_id, player_id, material_id, change_type) VALUES (?, ?, 0, ?)")) {
+            logStmt.setString(1, serverId);
+            logStmt.setInt(2, playerId);
+            logStmt.setInt(3, CollectionChange.Type.RELOAD.ordinal());
+            logStmt.executeUpdate();
+        }
+    }
+    
+    // Keeps player_stats in step with the collection tables, inside the caller's transaction
+    private void updateStats(Connection connection, Map<Integer, Integer> itemCounts) throws SQLException {
+        if (itemCounts.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement statsStmt = connection.prepareStatement(CollectionSchema.statsUpsertSql("mysql".equals(databaseType)))) {
+            for (Map.Entry<Integer, Integer> entry : itemCounts.entrySet()) {
+                statsStmt.setInt(1, entry.getKey());
+                statsStmt.setInt(2, entry.getValue());
+                statsStmt.setDouble(3, entry.getValue() * 100.0 / Math.max(1, collectibleItemCount));
+                statsStmt.addBatch();
+            }
+            statsStmt.executeBatch();
+        }
+    }
+    
+    // Adds the change in each player's item count to player_stats, inside the caller's
+    // transaction. Cheaper than recounting a player's rows on every write.
+    private void addToStats(Connection connection, Map<Integer, Integer> countChanges) throws SQLException {
+        String sql = CollectionSchema.statsIncrementSql("mysql".equals(databaseType), collectibleItemCount);
+        try (PreparedStatement statsStmt = connection.prepareStatement(sql)) {
+            boolean any = false;
+            for (Map.Entry<Integer, Integer> entry : countChanges.entrySet()) {
+                int change = entry.getValue();
+                if (change == 0) {
+                    continue;
+                }
+                statsStmt.setInt(1, entry.getKey());
+                statsStmt.setInt(2, change);
+                statsStmt.setDouble(3, Math.max(0, change) * 100.0 / Math.max(1, collectibleItemCount));
+                statsStmt.addBatch();
+                any = true;
+            }
+            if (any) {
+                statsStmt.executeBatch();
+            }
+        }
+    }
+    
+    // Inserts a player's items with multi-row INSERT IGNOREs and returns how many rows were new.
+    // Per-statement update counts are exact, batch counts aren't once the MySQL driver rewrites
+    // the batch (it reports SUCCESS_NO_INFO per row).
+    private int insertItems(Connection connection, int playerId, List<Integer> itemIds) throws SQLException {
+        String ignore = "mysql".equals(databaseType) ? "INSERT IGNORE" : "INSERT OR IGNORE";
+        int inserted = 0;
+        for (int start = 0; start < itemIds.size(); start += MAX_ROWS_PER_STATEMENT) {
+            List<Integer> chunk = itemIds.subList(start, Math.min(itemIds.size(), start + MAX_ROWS_PER_STATEMENT));
+            String insertSql = ignore + " INTO collection_items (player_id, material_id) VALUES "
+                    + String.join(", ", Collections.nCopies(chunk.size(), "(?, ?)"));
+            try (PreparedStatement insertStmt = connection.prepareStatement(insertSql)) {
+                int parameter = 1;
+                for (Integer materialId : chunk) {
+                    insertStmt.setInt(parameter++, playerId);
+                    insertStmt.setInt(parameter++, materialId);
+                }
+                inserted += insertStmt.executeUpdate();
+            }
+        }
+        return inserted;
+    }
+    
+    private void inTransaction(SqlWork work) throws SQLException {
+        try (Connection connection = writeDataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                work.run(connection);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+    
+    @FunctionalInterface
+    private interface SqlWork {
+        void run(Connection connection) throws SQLException;
+    }
+    
+    @FunctionalInterface
+    private interface JournalWork {
+        void run() throws IOException;
+    }
+    
+    private void record(Operation operation, long startNanos) {
+        latencies[operation.ordinal()].recordSince(startNanos);
+    }
+    
+    public LatencyHistogram.Snapshot getLatency(Operation operation) {
+        return latencies[operation.ordinal()].snapshot();
+    }
+    
+    // Compacts the journal on its own async task once the write that filled enough segments is
+    // done, so writes and reads never wait for a snapshot
+    private void scheduleJournalCompaction() {
+        JournalStore store = journal;
+        if (store == null || !store.isCompactionDue() || !plugin.isEnabled()
+                || !journalCompactionScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            try {
+                store.compact();
+            } catch (IOException e) {
+                logger.severe("Failed to compact the journal: " + e.getMessage());
+                e.printStackTrace();
+            } finally {
+                journalCompactionScheduled.set(false);
+            }
+        });
+    }
+    
+    private boolean writeJournal(String action, JournalWork work) {
+        try {
+            work.run();
+            scheduleJournalCompaction();
+            return true;
+        } catch (IOException e) {
+            logger.severe("Failed to " + action + ": " + e.getMessage());
+            e.printStackTrace();
+            return false;
+        }
+    }
+    
+    public Set<Material> loadPlayerCollection(UUID playerUUID) {
+        return loadPlayerCollection(playerUUID, HashSet::new);
+    }
+    
+    // Returns null when the collection couldn't be read, so a database hiccup is never mistaken
+    // for a player who hasn't collected anything
+    public <S extends Set<Material>> S loadPlayerCollection(UUID playerUUID, Supplier<S> collectionFactory) {
+        long start = System.nanoTime();
+        try {
+            return readCollection(playerUUID, collectionFactory);
+        } finally {
+            record(Operation.LOAD_COLLECTION, start);
+        }
+    }
+    
+    private <S extends Set<Material>> S readCollection(UUID playerUUID, Supplier<S> collectionFactory) {
+        S materials = collectionFactory.get();
+        JournalStore store = journal;
+        if (store != null) {
+            return store.load(playerUUID, materials);
+        }
+        if (bitsetLayout) {
+            return loadBitset(playerUUID, materials);
+        }
+        String sql = """
+            SELECT ci.material_id FROM collection_items ci
+            JOIN players p ON p.id = ci.player_id
+            WHERE p.player_uuid = ?
+            """;
+        
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
             stmt.setString(1, playerUUID.toString());
             ResultSet rs = stmt.executeQuery();
             
             while (rs.next()) {
-                String materialName = rs.getString("material_name");
-                try {
-                    materials.add(Material.valueOf(materialName));
-                } catch (IllegalArgumentException e) {
-                    logger.warning("Invalid material name in database: " + materialName);
+                // Ids of materials this server version doesn't have are skipped
+                Material material = materialById(rs.getInt("material_id"));
+                if (material != null) {
+                    materials.add(material);
                 }
             }
             
         } catch (SQLException e) {
             logger.severe("Failed to load player collection: " + e.getMessage());
             e.printStackTrace();
+            return null;
         }
         
         return materials;
     }
     
-    public Map<UUID, Set<Material>> loadAllCollections() {
-        Map<UUID, Set<Material>> allCollections = new HashMap<>();
-        String sql = "SELECT player_uuid, material_name FROM player_collections";
+    private <S extends Set<Material>> S loadBitset(UUID playerUUID, S materials) {
+        String sql = """
+            SELECT b.bits FROM collection_bitsets b
+            JOIN players p ON p.id = b.player_id
+            WHERE p.player_uuid = ?
+            """;
         
-        try (Statement stmt = connection.createStatement();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, playerUUID.toString());
+            ResultSet rs = stmt.executeQuery();
+            
+            if (rs.next()) {
+                BitSet bits = CollectionBitset.decode(rs.getBytes("bits"));
+                for (int materialId = bits.nextSetBit(0); materialId >= 0; materialId = bits.nextSetBit(materialId + 1)) {
+                    Material material = materialById(materialId);
+                    if (material != null) {
+                        materials.add(material);
+                    }
+                }
+            }
+            
+        } catch (SQLException | IllegalArgumentException e) {
+            logger.severe("Failed to load player collection: " + e.getMessage());
+            e.printStackTrace();
+            return null;
+        }
+        
+        return materials;
+    }
+    
+    public Map<UUID, Integer> loadCollectionCounts() {
+        long start = System.nanoTime();
+        try {
+            return readCollectionCounts();
+        } finally {
+            record(Operation.LOAD_COUNTS, start);
+        }
+    }
+    
+    private Map<UUID, Integer> readCollectionCounts() {
+        JournalStore store = journal;
+        if (store != null) {
+            return store.counts();
+        }
+        Map<UUID, Integer> counts = new HashMap<>();
+        String sql = bitsetLayout
+            ? "SELECT p.player_uuid, b.item_count FROM collection_bitsets b JOIN players p ON p.id = b.player_id"
+            : """
+            SELECT p.player_uuid, c.item_count
+            FROM (SELECT player_id, COUNT(*) AS item_count FROM collection_items GROUP BY player_id) c
+            JOIN players p ON p.id = c.player_id
+            """;
+        
+        try (Connection connection = dataSource.getConnection();
+             Statement stmt = connection.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
             
             while (rs.next()) {
                 String uuidString = rs.getString("player_uuid");
-                String materialName = rs.getString("material_name");
-                
                 try {
-                    UUID playerUUID = UUID.fromString(uuidString);
-                    Material material = Material.valueOf(materialName);
-                    
-                    allCollections.computeIfAbsent(playerUUID, k -> new HashSet<>()).add(material);
+                    counts.put(UUID.fromString(uuidString), rs.getInt("item_count"));
+                } catch (IllegalArgumentException e) {
+                    logger.warning("Invalid UUID in database: " + uuidString);
+                }
+            }
+            
+        } catch (SQLException e) {
+            logger.severe("Failed to load collection counts: " + e.getMessage());
+            e.printStackTrace();
+        }
+        
+        return counts;
+    }
+    
+    // Top players by item count from player_stats, ties in the order they reached the count.
+    // Served by the rank index without reading any collection rows.
+    public LinkedHashMap<UUID, Integer> loadTopCounts(int limit) {
+        long start = System.nanoTime();
+        try {
+            return readTopCounts(limit);
+        } finally {
+            record(Operation.LOAD_TOP, start);
+        }
+    }
+    
+    private LinkedHashMap<UUID, Integer> readTopCounts(int limit) {
+        JournalStore store = journal;
+        if (store != null) {
+            return store.top(limit);
+        }
+        LinkedHashMap<UUID, Integer> top = new LinkedHashMap<>();
+        String sql = """
+            SELECT p.player_uuid, s.item_count FROM player_stats s
+            JOIN players p ON p.id = s.player_id
+            WHERE s.item_count > 0
+            ORDER BY s.item_count DESC, s.last_discovery_at
+            LIMIT ?
+            """;
+        
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setInt(1, limit);
+            ResultSet rs = stmt.executeQuery();
+            
+            while (rs.next()) {
+                String uuidString = rs.getString("player_uuid");
+                try {
+                    top.put(UUID.fromString(uuidString), rs.getInt("item_count"));
                 } catch (IllegalArgumentException e) {
-                    logger.warning("Invalid data in database - UUID: " + uuidString + ", Material: " + materialName);
+                    logger.warning("Invalid UUID in database: " + uuidString);
+                }
+            }
+            
+        } catch (SQLException e) {
+            logger.severe("Failed to load leaderboard: " + e.getMessage());
+            e.printStackTrace();
+        }
+        
+        return top;
+    }
+    
+    // Totals for the leaderboard, plus the viewing player's count and rank. The rank counts the
+    // players with more items, players with the same count share a rank.
+    public LeaderboardSummary loadLeaderboardSummary(UUID viewerUUID) {
+        long start = System.nanoTime();
+        try {
+            return readLeaderboardSummary(viewerUUID);
+        } finally {
+            record(Operation.LOAD_LEADERBOARD_SUMMARY, start);
+        }
+    }
+    
+    private LeaderboardSummary readLeaderboardSummary(UUID viewerUUID) {
+        JournalStore store = journal;
+        if (store != null) {
+            return journalLeaderboardSummary(store.counts(), viewerUUID);
+        }
+        String totalsSql = "SELECT COUNT(*), MAX(item_count), AVG(item_count) FROM player_stats WHERE item_count > 0";
+        String viewerSql = "SELECT s.item_count FROM player_stats s JOIN players p ON p.id = s.player_id WHERE p.player_uuid = ?";
+        String rankSql = "SELECT COUNT(*) + 1 FROM player_stats WHERE item_count > ?";
+        LeaderboardSummary summary = new LeaderboardSummary();
+        
+        try (Connection connection = dataSource.getConnection();
+             Statement totalsStmt = connection.createStatement();
+             PreparedStatement viewerStmt = connection.prepareStatement(viewerSql);
+             PreparedStatement rankStmt = connection.prepareStatement(rankSql)) {
+            
+            try (ResultSet rs = totalsStmt.executeQuery(totalsSql)) {
+                if (rs.next()) {
+                    summary.participants = rs.getInt(1);
+                    summary.topCount = rs.getInt(2);
+                    summary.averageCount = rs.getDouble(3);
+                }
+            }
+            
+            viewerStmt.setString(1, viewerUUID.toString());
+            try (ResultSet rs = viewerStmt.executeQuery()) {
+                summary.viewerCount = rs.next() ? rs.getInt(1) : 0;
+            }
+            if (summary.viewerCount > 0) {
+                rankStmt.setInt(1, summary.viewerCount);
+                try (ResultSet rs = rankStmt.executeQuery()) {
+                    summary.viewerRank = rs.next() ? rs.getInt(1) : 0;
                 }
             }
             
         } catch (SQLException e) {
-            logger.severe("Failed to load all collections: " + e.getMessage());
+            logger.severe("Failed to load leaderboard stats: " + e.getMessage());
             e.printStackTrace();
         }
         
-        return allCollections;
+        return summary;
+    }
+    
+    private static LeaderboardSummary journalLeaderboardSummary(Map<UUID, Integer> counts, UUID viewerUUID) {
+        LeaderboardSummary summary = new LeaderboardSummary();
+        long total = 0;
+        for (int count : counts.values()) {
+            total += count;
+            summary.topCount = Math.max(summary.topCount, count);
+        }
+        summary.participants = counts.size();
+        summary.averageCount = counts.isEmpty() ? 0 : (double) total / counts.size();
+        summary.viewerCount = counts.getOrDefault(viewerUUID, 0);
+        if (summary.viewerCount > 0) {
+            int rank = 1;
+            for (int count : counts.values()) {
+                if (count > summary.viewerCount) {
+                    rank++;
+                }
+            }
+            summary.viewerRank = rank;
+        }
+        return summary;
+    }
+    
+    public static class LeaderboardSummary {
+        private int participants;
+        private int topCount;
+        private double averageCount;
+        private int viewerCount;
+        private int viewerRank;
+        
+        public int getParticipants() {
+            return participants;
+        }
+        
+        public int getTopCount() {
+            return topCount;
+        }
+        
+        public double getAverageCount() {
+            return averageCount;
+        }
+        
+        public int getViewerCount() {
+            return viewerCount;
+        }
+        
+        // 0 if the player has no items
+        public int getViewerRank() {
+            return viewerRank;
+        }
+    }
+    
+    public String getServerId() {
+        return serverId;
+    }
+    
+    public long loadLatestChangeId() {
+        try (Connection connection = dataSource.getConnection();
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM collection_changes")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        } catch (SQLException e) {
+            logger.severe("Failed to read the collection change log: " + e.getMessage());
+            e.printStackTrace();
+            return 0;
+        }
+    }
+    
+    // Up to `limit` log entries after the given id, oldest first
+    public List<CollectionChange> loadChanges(long afterId, int limit) {
+        return loadChanges("c.id > ? ORDER BY c.id LIMIT ?", stmt -> {
+            stmt.setLong(1, afterId);
+            stmt.setInt(2, limit);
+        });
+    }
+    
+    // The given log entries, for ids that were skipped because they weren't committed yet
+    public List<CollectionChange> loadChanges(Collection<Long> changeIds) {
+        if (changeIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Long> ids = new ArrayList<>(changeIds);
+        String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        return loadChanges("c.id IN (" + placeholders + ") ORDER BY c.id", stmt -> {
+            for (int i = 0; i < ids.size(); i++) {
+                stmt.setLong(i + 1, ids.get(i));
+            }
+        });
+    }
+    
+    private List<CollectionChange> loadChanges(String condition, StatementBinder binder) {
+        long start = System.nanoTime();
+        try {
+            return readChanges(condition, binder);
+        } finally {
+            record(Operation.LOAD_CHANGES, start);
+        }
+    }
+    
+    private List<CollectionChange> readChanges(String condition, StatementBinder binder) {
+        List<CollectionChange> changes = new ArrayList<>();
+        String sql = "SELECT c.id, c.server_id, c.material_id, c.change_type, p.player_uuid, s.item_count "
+                + "FROM collection_changes c "
+                + "JOIN players p ON p.id = c.player_id "
+                + "LEFT JOIN player_stats s ON s.player_id = c.player_id "
+                + "WHERE " + condition;
+        
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            binder.bind(stmt);
+            ResultSet rs = stmt.executeQuery();
+            
+            while (rs.next()) {
+                String uuidString = rs.getString("player_uuid");
+                try {
+                    changes.add(new CollectionChange(
+                            rs.getLong("id"),
+                            CollectionChange.Type.fromCode(rs.getInt("change_type")),
+                            UUID.fromString(uuidString),
+                            materialById(rs.getInt("material_id")),
+                            rs.getInt("item_count"),
+                            serverId.equals(rs.getString("server_id"))));
+                } catch (IllegalArgumentException e) {
+                    logger.warning("Invalid UUID in collection change log: " + uuidString);
+                }
+            }
+            
+        } catch (SQLException e) {
+            logger.severe("Failed to read the collection change log: " + e.getMessage());
+            e.printStackTrace();
+        }
+        
+        return changes;
+    }
+    
+    @FunctionalInterface
+    private interface StatementBinder {
+        void bind(PreparedStatement stmt) throws SQLException;
+    }
+    
+    // Deletes log entries up to and including the given id, returns how many were deleted
+    public int compactChanges(long upToId) {
+        try (Connection connection = writeDataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement("DELETE FROM collection_changes WHERE id <= ?")) {
+            stmt.setLong(1, upToId);
+            return stmt.executeUpdate();
+        } catch (SQLException e) {
+            logger.severe("Failed to compact the collection change log: " + e.getMessage());
+            e.printStackTrace();
+            return 0;
+        }
     }
     
     public void saveNotificationSettings(UUID playerUUID, boolean notificationsDisabled) {
+        saveNotificationSettings(Collections.singletonMap(playerUUID, notificationsDisabled));
+    }
+    
+    // Writes changed settings in one transaction, false if nothing was written
+    public boolean saveNotificationSettings(Map<UUID, Boolean> settings) {
+        long start = System.nanoTime();
+        try {
+            return writeNotificationSettings(settings);
+        } finally {
+            record(Operation.SAVE_SETTINGS, start);
+        }
+    }
+    
+    private boolean writeNotificationSettings(Map<UUID, Boolean> settings) {
+        if (settings.isEmpty()) {
+            return true;
+        }
+        JournalStore store = journal;
+        if (store != null) {
+            return writeJournal("save notification settings", () -> {
+                for (Map.Entry<UUID, Boolean> entry : settings.entrySet()) {
+                    store.setNotificationsDisabled(entry.getKey(), entry.getValue());
+                }
+            });
+        }
         String sql;
         
         // Use database-specific INSERT syntax
@@ -655,34 +1624,51 @@ public class DatabaseManager {
             sql = """
                 INSERT INTO player_notifications (player_uuid, notifications_disabled) 
                 VALUES (?, ?) 
-                ON DUPLICATE KEY UPDATE notifications_disabled = ?
+                ON DUPLICATE KEY UPDATE notifications_disabled = VALUES(notifications_disabled)
                 """;
         } else {
             // SQLite uses INSERT OR REPLACE
             sql = "INSERT OR REPLACE INTO player_notifications (player_uuid, notifications_disabled) VALUES (?, ?)";
         }
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, playerUUID.toString());
-            stmt.setBoolean(2, notificationsDisabled);
-            
-            // Only set the third parameter for MySQL
-            if ("mysql".equals(databaseType)) {
-                stmt.setBoolean(3, notificationsDisabled);
-            }
-            
-            stmt.executeUpdate();
+        try {
+            inTransaction(connection -> {
+                try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    for (Map.Entry<UUID, Boolean> entry : settings.entrySet()) {
+                        stmt.setString(1, entry.getKey().toString());
+                        stmt.setBoolean(2, entry.getValue());
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
+            });
+            return true;
         } catch (SQLException e) {
             logger.severe("Failed to save notification settings: " + e.getMessage());
             e.printStackTrace();
+            return false;
         }
     }
     
     public Set<UUID> loadNotificationSettings() {
+        long start = System.nanoTime();
+        try {
+            return readNotificationSettings();
+        } finally {
+            record(Operation.LOAD_SETTINGS, start);
+        }
+    }
+    
+    private Set<UUID> readNotificationSettings() {
+        JournalStore store = journal;
+        if (store != null) {
+            return store.getNotificationsDisabled();
+        }
         Set<UUID> disabledNotifications = new HashSet<>();
         String sql = "SELECT player_uuid FROM player_notifications WHERE notifications_disabled = TRUE";
         
-        try (Statement stmt = connection.createStatement();
+        try (Connection connection = dataSource.getConnection();
+             Statement stmt = connection.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
             
             while (rs.next()) {
@@ -702,130 +1688,211 @@ public class DatabaseManager {
         return disabledNotifications;
     }
     
-    public void close() {
-        if (connection != null) {
-            try {
-                connection.close();
-                logger.info("Database connection closed");
-            } catch (SQLException e) {
-                logger.severe("Error closing database connection: " + e.getMessage());
-            }
+    public void savePlayerName(UUID playerUUID, String playerName) {
+        long start = System.nanoTime();
+        try {
+            writePlayerName(playerUUID, playerName);
+        } finally {
+            record(Operation.SAVE_NAME, start);
         }
     }
     
-    public boolean isConnected() {
-        try {
-            return connection != null && !connection.isClosed();
+    private void writePlayerName(UUID playerUUID, String playerName) {
+        JournalStore store = journal;
+        if (store != null) {
+            writeJournal("save player name", () -> store.setName(playerUUID, playerName));
+            return;
+        }
+        String sql;
+        
+        // Use database-specific upsert syntax
+        if ("mysql".equals(databaseType)) {
+            sql = """
+                INSERT INTO player_profiles (player_uuid, player_name) 
+                VALUES (?, ?) 
+                ON DUPLICATE KEY UPDATE player_name = VALUES(player_name)
+                """;
+        } else {
+            sql = """
+                INSERT INTO player_profiles (player_uuid, player_name) 
+                VALUES (?, ?) 
+                ON CONFLICT(player_uuid) DO UPDATE SET player_name = excluded.player_name, updated_at = CURRENT_TIMESTAMP
+                """;
+        }
+        
+        try (Connection connection = writeDataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, playerUUID.toString());
+            stmt.setString(2, playerName);
+            stmt.executeUpdate();
         } catch (SQLException e) {
-            return false;
+            logger.severe("Failed to save player name: " + e.getMessage());
+            e.printStackTrace();
         }
     }
     
-    public String getCurrentDatabaseType() {
-        return databaseType;
-    }
-    
-    public boolean reinitialize() {
+    public Map<UUID, String> loadPlayerNames() {
+        long start = System.nanoTime();
         try {
-            // Close the current connection
-            if (connection != null) {
-                connection.close();
-                connection = null;
-            }
-            
-            // Reinitialize with the current config
-            return initialize();
-        } catch (Exception e) {
-            logger.severe("Failed to reinitialize database: " + e.getMessage());
-            e.printStackTrace();
-            return false;
+            return readPlayerNames();
+        } finally {
+            record(Operation.LOAD_NAMES, start);
         }
     }
     
-    private Map<UUID, Set<Material>> loadAllCollectionsFromSQLite() {
-        Map<UUID, Set<Material>> allCollections = new HashMap<>();
+    private Map<UUID, String> readPlayerNames() {
+        JournalStore store = journal;
+        if (store != null) {
+            return store.getNames();
+        }
+        Map<UUID, String> names = new HashMap<>();
+        String sql = "SELECT player_uuid, player_name FROM player_profiles";
         
-        try {
-            // Create a direct connection to the SQLite file
-            File sqliteFile = new File(plugin.getDataFolder(), config.getString("database.sqlite.filename", "collections.db"));
-            if (!sqliteFile.exists()) {
-                logger.warning("SQLite database file not found: " + sqliteFile.getAbsolutePath());
-                return allCollections;
-            }
+        try (Connection connection = dataSource.getConnection();
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
             
-            String sqliteUrl = "jdbc:sqlite:" + sqliteFile.getAbsolutePath();
-            try (Connection sqliteConnection = DriverManager.getConnection(sqliteUrl)) {
-                String sql = "SELECT player_uuid, material_name FROM player_collections";
-                
-                try (Statement stmt = sqliteConnection.createStatement();
-                     ResultSet rs = stmt.executeQuery(sql)) {
-                    
-                    while (rs.next()) {
-                        String uuidString = rs.getString("player_uuid");
-                        String materialName = rs.getString("material_name");
-                        
-                        try {
-                            UUID playerUUID = UUID.fromString(uuidString);
-                            Material material = Material.valueOf(materialName);
-                            // Additional validation: check if material is actually collectible
-                            if (material.isItem() && !material.isAir()) {
-                                allCollections.computeIfAbsent(playerUUID, k -> new HashSet<>()).add(material);
-                            } else {
-                                logger.warning("Skipping non-collectible material in SQLite: " + materialName);
-                            }
-                        } catch (IllegalArgumentException e) {
-                            logger.warning("Invalid data in SQLite - UUID: " + uuidString + ", Material: " + materialName);
-                        }
-                    }
+            while (rs.next()) {
+                String uuidString = rs.getString("player_uuid");
+                try {
+                    names.put(UUID.fromString(uuidString), rs.getString("player_name"));
+                } catch (IllegalArgumentException e) {
+                    logger.warning("Invalid UUID in player profiles: " + uuidString);
                 }
             }
             
         } catch (SQLException e) {
-            logger.severe("Failed to load collections from SQLite: " + e.getMessage());
+            logger.severe("Failed to load player names: " + e.getMessage());
             e.printStackTrace();
         }
         
-        return allCollections;
+        return names;
     }
     
-    private Set<UUID> loadNotificationSettingsFromSQLite() {
-        Set<UUID> disabledNotifications = new HashSet<>();
-        
-        try {
-            // Create a direct connection to the SQLite file
-            File sqliteFile = new File(plugin.getDataFolder(), config.getString("database.sqlite.filename", "collections.db"));
-            if (!sqliteFile.exists()) {
-                logger.warning("SQLite database file not found: " + sqliteFile.getAbsolutePath());
-                return disabledNotifications;
+    public synchronized void close() {
+        if (journal != null) {
+            try {
+                journal.close();
+                logger.info("Journal closed");
+            } catch (IOException e) {
+                logger.severe("Failed to close journal: " + e.getMessage());
+                e.printStackTrace();
             }
-            
-            String sqliteUrl = "jdbc:sqlite:" + sqliteFile.getAbsolutePath();
-            try (Connection sqliteConnection = DriverManager.getConnection(sqliteUrl)) {
-                String sql = "SELECT player_uuid FROM player_notifications WHERE notifications_disabled = TRUE";
-                
-                try (Statement stmt = sqliteConnection.createStatement();
-                     ResultSet rs = stmt.executeQuery(sql)) {
-                    
-                    while (rs.next()) {
-                        String uuidString = rs.getString("player_uuid");
-                        try {
-                            disabledNotifications.add(UUID.fromString(uuidString));
-                        } catch (IllegalArgumentException e) {
-                            logger.warning("Invalid UUID in SQLite notifications: " + uuidString);
-                        }
-                    }
-                }
+            journal = null;
+        }
+        if (writeDataSource != null) {
+            if ("sqlite".equals(databaseType)) {
+                // Fold the WAL back into the main file so backups of the .db file alone are complete
+                checkpointWal("TRUNCATE");
             }
-            
-        } catch (SQLException e) {
-            logger.severe("Failed to load notification settings from SQLite: " + e.getMessage());
+            closePools(dataSource, writeDataSource);
+            dataSource = null;
+            writeDataSource = null;
+            logger.info("Database connection pool closed");
+        }
+    }
+    
+    public boolean isConnected() {
+        JournalStore store = journal;
+        if (store != null) {
+            return store.isOpen();
+        }
+        HikariDataSource reader = dataSource;
+        HikariDataSource writer = writeDataSource;
+        return reader != null && reader.isRunning() && writer != null && writer.isRunning();
+    }
+    
+    public String getPoolStats() {
+        JournalStore store = journal;
+        if (store != null) {
+            return "journal[" + store.getStats() + "]";
+        }
+        HikariDataSource reader = dataSource;
+        HikariDataSource writer = writeDataSource;
+        if (reader == null || writer == null) {
+            return "not connected";
+        }
+        if (reader == writer) {
+            return poolStats(reader);
+        }
+        return "writer[" + poolStats(writer) + "], readers[" + poolStats(reader) + "]";
+    }
+    
+    private static String poolStats(HikariDataSource source) {
+        HikariPoolMXBean pool = source.getHikariPoolMXBean();
+        if (pool == null) {
+            return "not connected";
+        }
+        return "active=" + pool.getActiveConnections() + ", idle=" + pool.getIdleConnections()
+                + ", total=" + pool.getTotalConnections() + ", waiting=" + pool.getThreadsAwaitingConnection();
+    }
+    
+    public String getCurrentDatabaseType() {
+        return databaseType;
+    }
+    
+    // Opens a new pool with the current config and swaps it in. The old pool stays usable until
+    // the new one is ready, and is kept if the new one can't be opened.
+    public synchronized boolean reinitialize() {
+        if ("journal".equals(databaseType)) {
+            // Two stores must never append to the same directory, so this one can't be kept open
+            close();
+            return initialize();
+        }
+        HikariDataSource previousReader = dataSource;
+        HikariDataSource previousWriter = writeDataSource;
+        try {
+            if (!initialize()) {
+                restorePools(previousReader, previousWriter);
+                return false;
+            }
+            closeReplaced(previousReader);
+            closeReplaced(previousWriter);
+            return true;
+        } catch (Exception e) {
+            restorePools(previousReader, previousWriter);
+            logger.severe("Failed to reinitialize database: " + e.getMessage());
             e.printStackTrace();
+            return false;
+        }
+    }
+    
+    private void restorePools(HikariDataSource previousReader, HikariDataSource previousWriter) {
+        HikariDataSource failedReader = dataSource;
+        HikariDataSource failedWriter = writeDataSource;
+        dataSource = previousReader;
+        writeDataSource = previousWriter;
+        closeReplaced(failedReader);
+        closeReplaced(failedWriter);
+    }
+    
+    // Closes a pool that is no longer one of the active ones
+    private void closeReplaced(HikariDataSource pool) {
+        if (pool != null && pool != dataSource && pool != writeDataSource) {
+            pool.close();
+        }
+    }
+    
+    private static void closePools(HikariDataSource reader, HikariDataSource writer) {
+        if (reader != null) {
+            reader.close();
+        }
+        if (writer != null && writer != reader) {
+            writer.close();
         }
-        
-        return disabledNotifications;
     }
     
     public String detectCurrentDatabaseType() {
+        // A migration that failed part way left committed chunks in the target; that target isn't
+        // in use yet, the migration still has to resume from its checkpoint
+        String targetType = config.getString("database.type", "sqlite").toLowerCase();
+        MigrationEngine migrationEngine = new MigrationEngine(plugin);
+        for (String sourceType : new String[] {"sqlite", "mysql"}) {
+            if (!sourceType.equals(targetType) && migrationEngine.hasCheckpoint(sourceType, targetType)) {
+                return sourceType;
+            }
+        }
+        
         // Check if we have a SQLite database file with data
         File sqliteFile = new File(plugin.getDataFolder(), config.getString("database.sqlite.filename", "collections.db"));
         if (sqliteFile.exists()) {
@@ -834,8 +1901,7 @@ public class DatabaseManager {
                 String sqliteUrl = "jdbc:sqlite:" + sqliteFile.getAbsolutePath();
                 try (Connection sqliteConnection = DriverManager.getConnection(sqliteUrl)) {
                     try (Statement stmt = sqliteConnection.createStatement()) {
-                        ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM player_collections");
-                        if (rs.next() && rs.getInt(1) > 0) {
+                        if (hasCollectionRows(stmt)) {
                             return "sqlite";
                         }
                     }
@@ -846,6 +1912,10 @@ public class DatabaseManager {
             }
         }
         
+        if (JournalStore.hasData(journalDirectory())) {
+            return "journal";
+        }
+        
         // Check if we can connect to MySQL with current config and it has data
         try {
             String mysqlHost = config.getString("database.mysql.host", "localhost");
@@ -860,8 +1930,7 @@ public class DatabaseManager {
             try (Connection testConnection = DriverManager.getConnection(mysqlUrl, mysqlUsername, mysqlPassword)) {
                 // Check if our tables exist in MySQL and have data
                 try (Statement stmt = testConnection.createStatement()) {
-                    ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM player_collections");
-                    if (rs.next() && rs.getInt(1) > 0) {
+                    if (hasCollectionRows(stmt)) {
                         return "mysql";
                     }
                 } catch (SQLException e) {
@@ -877,36 +1946,47 @@ public class DatabaseManager {
         return "none";
     }
     
-    private void createTablesInConnection(Connection connection) throws SQLException {
-        String createCollectionsTable = """
-            CREATE TABLE IF NOT EXISTS player_collections (
-                id INT AUTO_INCREMENT PRIMARY KEY,
-                player_uuid VARCHAR(36) NOT NULL,
-                material_name VARCHAR(100) NOT NULL,
-                collected_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                UNIQUE KEY unique_player_material (player_uuid, material_name)
-            )
-            """;
-            
-        String createNotificationsTable = """
-            CREATE TABLE IF NOT EXISTS player_notifications (
-                player_uuid VARCHAR(36) PRIMARY KEY,
-                notifications_disabled BOOLEAN DEFAULT FALSE
-            )
-            """;
-        
-        try (Statement stmt = connection.createStatement()) {
-            stmt.execute(createCollectionsTable);
-            stmt.execute(createNotificationsTable);
+    // Checks the current tables first, then the table used before the schema upgrade
+    private static boolean hasCollectionRows(Statement stmt) throws SQLException {
+        for (String table : new String[] {"collection_items", "collection_bitsets"}) {
+            try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+                if (rs.next() && rs.getInt(1) > 0) {
+                    return true;
+                }
+            } catch (SQLException e) {
+                // Not upgraded yet
+            }
+        }
+        try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + CollectionSchema.LEGACY_TABLE)) {
+            return rs.next() && rs.getInt(1) > 0;
         }
     }
     
+    // Brings both ends of a migration onto the current schema before rows are copied
+    private void prepareMigration(Connection source, boolean mysqlSource, Connection target, boolean mysqlTarget) throws SQLException {
+        CollectionSchema.create(source, mysqlSource);
+        CollectionSchema.upgradeLegacy(source, mysqlSource, logger);
+        CollectionSchema.create(target, mysqlTarget);
+        CollectionSchema.upgradeLegacy(target, mysqlTarget, logger);
+        CollectionSchema.ensureMaterials(target, mysqlTarget);
+    }
+    
+    // Runs once the copy is complete, before the plugin switches to the target. The copied
+    // collections are moved into the configured layout and player_stats is recomputed from
+    // them. Discoveries the write queue flushed to the target during the copy already have
+    // stats rows, so the table can't be left for the next start to rebuild when it's empty.
+    private void finishMigration(Connection target, boolean mysqlTarget) throws SQLException {
+        CollectionSchema.convertLayout(target, mysqlTarget, bitsetLayout, logger);
+        CollectionSchema.rebuildStats(target, bitsetLayout, collectibleItemCount, logger);
+    }
+    
     private boolean validateDatabaseSchema(Connection connection) {
         try {
             // Check if required tables exist
             try (Statement stmt = connection.createStatement()) {
-                // Test player_collections table
-                stmt.executeQuery("SELECT COUNT(*) FROM player_collections LIMIT 1");
+                // Test collection tables
+                stmt.executeQuery("SELECT COUNT(*) FROM collection_items LIMIT 1");
+                stmt.executeQuery("SELECT COUNT(*) FROM players LIMIT 1");
                 
                 // Test player_notifications table
                 stmt.executeQuery("SELECT COUNT(*) FROM player_notifications LIMIT 1");
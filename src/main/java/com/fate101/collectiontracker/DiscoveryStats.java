@@ -0,0 +1,79 @@
+package com.fate101.collectiontracker;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Per-source counters for the discovery pipeline: how many events each listener handled,
+// how many of them found a new item, and a latency histogram of the handlers.
+public class DiscoveryStats {
+    public enum Source {
+        PICKUP,
+        INVENTORY,
+        CRAFT,
+        SMELT,
+        TRADE,
+        BREW,
+        BUCKET,
+        MILK
+    }
+
+    private final LongAdder[] discoveries = new LongAdder[Source.values().length];
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Source.values().length];
+
+    public DiscoveryStats() {
+        for (int i = 0; i < latencies.length; i++) {
+            discoveries[i] = new LongAdder();
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    public void record(Source source, long startNanos, boolean discovered) {
+        int i = source.ordinal();
+        latencies[i].recordSince(startNanos);
+        if (discovered) {
+            discoveries[i].increment();
+        }
+    }
+
+    public long getEvents(Source source) {
+        return latencies[source.ordinal()].snapshot().getCount();
+    }
+
+    public long getDiscoveries(Source source) {
+        return discoveries[source.ordinal()].sum();
+    }
+
+    public long getTotalDiscoveries() {
+        long total = 0;
+        for (LongAdder adder : discoveries) {
+            total += adder.sum();
+        }
+        return total;
+    }
+
+    public long getTotalNanos(Source source) {
+        return latencies[source.ordinal()].getTotalNanos();
+    }
+
+    public long getMaxNanos(Source source) {
+        return latencies[source.ordinal()].getMaxNanos();
+    }
+
+    public LatencyHistogram.Snapshot getLatency(Source source) {
+        return latencies[source.ordinal()].snapshot();
+    }
+
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder("Discovery sources:");
+        for (Source source : Source.values()) {
+            long count = getEvents(source);
+            if (count == 0) {
+                continue;
+            }
+            summary.append(' ').append(source.name().toLowerCase())
+                    .append("=").append(count).append(" events/")
+                    .append(getDiscoveries(source)).append(" new/")
+                    .append(String.format("%.1fms", getTotalNanos(source) / 1_000_000.0));
+        }
+        return summary.toString();
+    }
+}
@@ -0,0 +1,264 @@
+package com.fate101.collectiontracker;
+
+import org.bukkit.Material;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.io.IOException;
+import java.sql.*;
+import java.util.*;
+import java.util.logging.Logger;
+
+// Copies everything between the journal backend and a SQL database for /collectiondbmigrate.
+// The journal keeps its whole state in memory, so there is no keyset paging or checkpoint file
+// as in MigrationEngine: both directions only add what is missing on the other side, and a
+// migration that failed part way is simply run again.
+public class JournalMigration {
+    private static final long PROGRESS_LOG_INTERVAL_MS = 5000;
+
+    private final Logger logger;
+    private final int chunkSize;
+    private final MigrationEngine.ProgressListener progressListener;
+
+    private long players;
+    private long items;
+    private long notifications;
+    private long names;
+    private long skipped;
+
+    public JournalMigration(JavaPlugin plugin, MigrationEngine.ProgressListener progressListener) {
+        this.logger = plugin.getLogger();
+        this.chunkSize = Math.max(1, plugin.getConfig().getInt("database.migration.chunk-size", 1000));
+        this.progressListener = progressListener;
+    }
+
+    // The target tables must exist and have their materials dictionary. Collections are written
+    // as rows; a target using the bitset layout converts them when the plugin next opens it.
+    public void toSql(JournalStore source, Connection target, boolean mysqlTarget) throws SQLException {
+        long started = System.currentTimeMillis();
+        String ignore = mysqlTarget ? "INSERT IGNORE " : "INSERT OR IGNORE ";
+        String playerSql = ignore + "INTO players (player_uuid) VALUES (?)";
+        String itemSql = ignore + "INTO collection_items (player_id, material_id) "
+                + "SELECT p.id, m.id FROM players p, materials m WHERE p.player_uuid = ? AND m.material_name = ?";
+        String notificationSql = ignore + "INTO player_notifications (player_uuid, notifications_disabled) VALUES (?, TRUE)";
+        String profileSql = ignore + "INTO player_profiles (player_uuid, player_name) VALUES (?, ?)";
+
+        // Copied out under the journal's lock, then written without holding it
+        List<Object[]> entries = new ArrayList<>();
+        source.forEachPlayer((playerUUID, materialNames, notificationsDisabled, name) ->
+                entries.add(new Object[] {playerUUID, materialNames, notificationsDisabled, name}));
+
+        boolean autoCommit = target.getAutoCommit();
+        target.setAutoCommit(false);
+        try (PreparedStatement playerStmt = target.prepareStatement(playerSql);
+             PreparedStatement itemStmt = target.prepareStatement(itemSql);
+             PreparedStatement notificationStmt = target.prepareStatement(notificationSql);
+             PreparedStatement profileStmt = target.prepareStatement(profileSql)) {
+            long lastReport = started;
+            for (int start = 0; start < entries.size(); start += chunkSize) {
+                List<Object[]> chunk = entries.subList(start, Math.min(entries.size(), start + chunkSize));
+                for (Object[] entry : chunk) {
+                    playerStmt.setString(1, entry[0].toString());
+                    playerStmt.addBatch();
+                }
+                // Players first, the item inserts look their ids up
+                playerStmt.executeBatch();
+
+                for (Object[] entry : chunk) {
+                    String uuidString = entry[0].toString();
+                    @SuppressWarnings("unchecked")
+                    List<String> materialNames = (List<String>) entry[1];
+                    for (String materialName : materialNames) {
+                        itemStmt.setString(1, uuidString);
+                        itemStmt.setString(2, materialName);
+                        itemStmt.addBatch();
+                        items++;
+                    }
+                    if ((Boolean) entry[2]) {
+                        notificationStmt.setString(1, uuidString);
+                        notificationStmt.addBatch();
+                        notifications++;
+                    }
+                    if (entry[3] != null) {
+                        profileStmt.setString(1, uuidString);
+                        profileStmt.setString(2, (String) entry[3]);
+                        profileStmt.addBatch();
+                        names++;
+                    }
+                }
+                try {
+                    itemStmt.executeBatch();
+                    notificationStmt.executeBatch();
+                    profileStmt.executeBatch();
+                    target.commit();
+                } catch (SQLException e) {
+                    target.rollback();
+                    throw e;
+                }
+                players += chunk.size();
+                lastReport = reportProgress(entries.size(), started, lastReport);
+            }
+        } finally {
+            target.setAutoCommit(autoCommit);
+        }
+        logResult("SQL", started);
+    }
+
+    // Reads collections from either layout, whichever holds rows
+    public void toJournal(Connection source, boolean mysqlSource, JournalStore target) throws SQLException, IOException {
+        long started = System.currentTimeMillis();
+        long total = count(source, "players");
+
+        Map<Integer, Material> materials = new HashMap<>();
+        try (Statement stmt = source.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, material_name FROM materials")) {
+            while (rs.next()) {
+                try {
+                    Material material = Material.valueOf(rs.getString("material_name"));
+                    if (material.isItem() && !material.isAir()) {
+                        materials.put(rs.getInt("id"), material);
+                    }
+                } catch (IllegalArgumentException e) {
+                    // Not on this server version
+                }
+            }
+        }
+
+        String rowsSql = """
+            SELECT p.player_uuid, ci.material_id FROM collection_items ci
+            JOIN players p ON p.id = ci.player_id
+            ORDER BY ci.player_id
+            """;
+        String bitsetsSql = "SELECT p.player_uuid, b.bits FROM collection_bitsets b JOIN players p ON p.id = b.player_id";
+        Map<UUID, List<Material>> pending = new HashMap<>();
+        long lastReport = started;
+
+        try (Statement stmt = source.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(mysqlSource ? Integer.MIN_VALUE : chunkSize);
+            try (ResultSet rs = stmt.executeQuery(rowsSql)) {
+                while (rs.next()) {
+                    UUID playerUUID = parseUUID(rs.getString("player_uuid"));
+                    Material material = materials.get(rs.getInt("material_id"));
+                    if (playerUUID == null || material == null) {
+                        skipped++;
+                        continue;
+                    }
+                    // Rows arrive grouped by player, so a full chunk only splits the player being read
+                    if (!pending.containsKey(playerUUID) && pending.size() >= chunkSize) {
+                        lastReport = flush(target, pending, total, started, lastReport);
+                    }
+                    pending.computeIfAbsent(playerUUID, key -> new ArrayList<>()).add(material);
+                    items++;
+                }
+            }
+        }
+        lastReport = flush(target, pending, total, started, lastReport);
+
+        try (Statement stmt = source.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(mysqlSource ? Integer.MIN_VALUE : chunkSize);
+            try (ResultSet rs = stmt.executeQuery(bitsetsSql)) {
+                while (rs.next()) {
+                    UUID playerUUID = parseUUID(rs.getString("player_uuid"));
+                    BitSet bits;
+                    try {
+                        bits = CollectionBitset.decode(rs.getBytes("bits"));
+                    } catch (IllegalArgumentException e) {
+                        bits = null;
+                    }
+                    if (playerUUID == null || bits == null) {
+                        skipped++;
+                        continue;
+                    }
+                    List<Material> playerMaterials = new ArrayList<>(bits.cardinality());
+                    for (int id = bits.nextSetBit(0); id >= 0; id = bits.nextSetBit(id + 1)) {
+                        Material material = materials.get(id);
+                        if (material != null) {
+                            playerMaterials.add(material);
+                        }
+                    }
+                    pending.put(playerUUID, playerMaterials);
+                    items += playerMaterials.size();
+                    if (pending.size() >= chunkSize) {
+                        lastReport = flush(target, pending, total, started, lastReport);
+                    }
+                }
+            }
+        }
+        flush(target, pending, total, started, lastReport);
+
+        try (Statement stmt = source.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT player_uuid FROM player_notifications WHERE notifications_disabled = TRUE")) {
+            while (rs.next()) {
+                UUID playerUUID = parseUUID(rs.getString("player_uuid"));
+                if (playerUUID != null) {
+                    target.setNotificationsDisabled(playerUUID, true);
+                    notifications++;
+                }
+            }
+        }
+        try (Statement stmt = source.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT player_uuid, player_name FROM player_profiles")) {
+            while (rs.next()) {
+                UUID playerUUID = parseUUID(rs.getString("player_uuid"));
+                String name = rs.getString("player_name");
+                if (playerUUID != null && name != null) {
+                    target.setName(playerUUID, name);
+                    names++;
+                }
+            }
+        }
+
+        // Start the journal from one snapshot instead of segments full of imported records
+        target.compact();
+        logResult("journal", started);
+    }
+
+    private long flush(JournalStore target, Map<UUID, List<Material>> pending, long total, long started, long lastReport)
+            throws IOException {
+        if (pending.isEmpty()) {
+            return lastReport;
+        }
+        target.add(pending);
+        players += pending.size();
+        pending.clear();
+        return reportProgress(total, started, lastReport);
+    }
+
+    private long reportProgress(long total, long started, long lastReport) {
+        long now = System.currentTimeMillis();
+        if (now - lastReport < PROGRESS_LOG_INTERVAL_MS) {
+            return lastReport;
+        }
+        long elapsed = Math.max(1, now - started);
+        long rate = players * 1000 / elapsed;
+        logger.info(String.format("Migrating players: %d/%d (%.0f%%), %d players/s",
+                players, total, total > 0 ? Math.min(100.0, players * 100.0 / total) : 100.0, rate));
+        if (progressListener != null) {
+            progressListener.onProgress("players", players, total, rate);
+        }
+        return now;
+    }
+
+    private void logResult(String targetName, long started) {
+        logger.info("Migrated " + players + " players with " + items + " collected items, " + notifications
+                + " notification settings and " + names + " player names to the " + targetName + " backend in "
+                + (System.currentTimeMillis() - started) + "ms");
+        if (skipped > 0) {
+            logger.warning("Skipped " + skipped + " rows with invalid UUIDs or materials");
+        }
+    }
+
+    private long count(Connection source, String table) throws SQLException {
+        try (Statement stmt = source.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private UUID parseUUID(String uuidString) {
+        try {
+            return UUID.fromString(uuidString);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,631 @@
+package com.fate101.collectiontracker;
+
+import org.bukkit.Material;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+// Storage backend for database.type: "journal", meant for single servers. Every change is one
+// fixed-size record appended to a memory-mapped segment file. The whole state is kept in memory
+// and rebuilt on startup from the latest snapshot plus the segments written after it.
+//
+// Record (40 bytes): type, an unused byte, a short value (material id, notification flag or
+// name length), the player UUID, 16 name bytes, and a CRC32 of the first 36 bytes. Segments
+// are preallocated and zero-filled, so a zero type byte marks the end of the log. A record
+// whose CRC doesn't match was torn by a crash: replay stops there and the next appends
+// overwrite it.
+//
+// Once enough segments have filled up, compaction is due: the owner runs compact() off the write
+// path, which writes the state to a new snapshot (a temp file renamed over the old one) and
+// deletes the segments it covers. Only copying the state holds the store's lock, writes and
+// reads carry on while the snapshot is written.
+public class JournalStore {
+    private static final int RECORD_SIZE = 40;
+    private static final int CRC_OFFSET = 36;
+    private static final int NAME_OFFSET = 20;
+    private static final int NAME_BYTES = 16;
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    private static final byte CLEAR = 3;
+    private static final byte NOTIFICATIONS = 4;
+    private static final byte NAME = 5;
+
+    private static final int SNAPSHOT_MAGIC = 0x43544A53;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final String SNAPSHOT_FILE = "snapshot.dat";
+    private static final String MATERIALS_FILE = "materials.txt";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final File directory;
+    private final Logger logger;
+    private final int segmentRecords;
+    private final int compactAfterSegments;
+    private final boolean syncWrites;
+
+    private final Map<UUID, PlayerState> players = new HashMap<>();
+    // Material dictionary, ids are line numbers in materials.txt starting at 1 and never change
+    private final List<String> materialNames = new ArrayList<>();
+    private int[] materialIds = new int[0];
+    private Material[] materialsById = new Material[0];
+
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private int segmentCapacity;
+    private int segmentNumber;
+    private int firstSegment;
+    private int position;
+    private int unforcedFrom;
+    // Number of records applied so far, orders leaderboard ties
+    private long sequence;
+    private final ByteBuffer scratch = ByteBuffer.allocate(RECORD_SIZE);
+    private final byte[] nameField = new byte[NAME_BYTES];
+    private final CRC32 crc = new CRC32();
+    // Held for a whole compaction, so only one runs and close() waits for it
+    private final Object compactionLock = new Object();
+
+    // Statistics
+    private long appendedRecords;
+    private long replayedRecords;
+    private long compactions;
+    private long lastOpenMillis;
+
+    private static class PlayerState {
+        final BitSet materials = new BitSet();
+        boolean notificationsDisabled;
+        String name;
+        // Sequence number of the record that last raised the item count
+        long lastIncrease;
+
+        PlayerState copy() {
+            PlayerState copy = new PlayerState();
+            copy.materials.or(materials);
+            copy.notificationsDisabled = notificationsDisabled;
+            copy.name = name;
+            copy.lastIncrease = lastIncrease;
+            return copy;
+        }
+    }
+
+    // Receives one player's state during export; material names include ones this server
+    // version doesn't have
+    public interface PlayerVisitor {
+        void visit(UUID playerUUID, List<String> materialNames, boolean notificationsDisabled, String name);
+    }
+
+    public JournalStore(File directory, Logger logger, int segmentRecords, int compactAfterSegments, boolean syncWrites) {
+        this.directory = directory;
+        this.logger = logger;
+        this.segmentRecords = Math.max(1024, segmentRecords);
+        this.compactAfterSegments = Math.max(1, compactAfterSegments);
+        this.syncWrites = syncWrites;
+    }
+
+    // True if the directory holds a snapshot or any segments
+    public static boolean hasData(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.equals(SNAPSHOT_FILE)
+                || (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)));
+        return files != null && files.length > 0;
+    }
+
+    public synchronized void open() throws IOException {
+        long start = System.currentTimeMillis();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create journal directory " + directory);
+        }
+        loadMaterials();
+        int snapshotThrough = loadSnapshot();
+
+        List<Integer> segments = listSegments();
+        for (Iterator<Integer> it = segments.iterator(); it.hasNext(); ) {
+            int number = it.next();
+            if (number <= snapshotThrough) {
+                // Left over from a compaction that stopped before deleting it
+                deleteSegment(number);
+                it.remove();
+            }
+        }
+
+        for (int i = 0; i < segments.size(); i++) {
+            boolean last = i == segments.size() - 1;
+            mapSegment(segments.get(i));
+            int end = replaySegment(last);
+            if (last) {
+                position = end;
+                unforcedFrom = end;
+            } else {
+                closeSegment();
+            }
+        }
+        if (segments.isEmpty()) {
+            mapSegment(snapshotThrough + 1);
+            position = 0;
+            unforcedFrom = 0;
+        }
+        firstSegment = segments.isEmpty() ? segmentNumber : segments.get(0);
+
+        lastOpenMillis = System.currentTimeMillis() - start;
+        logger.info("Journal loaded " + players.size() + " players (" + replayedRecords + " records replayed) in "
+                + lastOpenMillis + "ms");
+    }
+
+    public synchronized boolean isOpen() {
+        return channel != null;
+    }
+
+    // Waits for a running compaction, so a store opened next on the directory never sees half of one
+    public void close() throws IOException {
+        synchronized (compactionLock) {
+            synchronized (this) {
+                if (channel == null) {
+                    return;
+                }
+                force();
+                closeSegment();
+            }
+        }
+    }
+
+    public synchronized void add(Map<UUID, ? extends Collection<Material>> additions) throws IOException {
+        for (Map.Entry<UUID, ? extends Collection<Material>> entry : additions.entrySet()) {
+            PlayerState state = players.get(entry.getKey());
+            for (Material material : entry.getValue()) {
+                int materialId = materialIds[material.ordinal()];
+                // Only new items take up space in the log
+                if (materialId != 0 && (state == null || !state.materials.get(materialId))) {
+                    append(ADD, entry.getKey(), materialId, null);
+                    state = players.get(entry.getKey());
+                }
+            }
+        }
+        writeCompleted();
+    }
+
+    public synchronized void remove(UUID playerUUID, Collection<Material> materials) throws IOException {
+        PlayerState state = players.get(playerUUID);
+        if (state == null) {
+            return;
+        }
+        for (Material material : materials) {
+            int materialId = materialIds[material.ordinal()];
+            if (materialId != 0 && state.materials.get(materialId)) {
+                append(REMOVE, playerUUID, materialId, null);
+            }
+        }
+        writeCompleted();
+    }
+
+    public synchronized void replace(UUID playerUUID, Set<Material> materials) throws IOException {
+        append(CLEAR, playerUUID, 0, null);
+        for (Material material : materials) {
+            int materialId = materialIds[material.ordinal()];
+            if (materialId != 0) {
+                append(ADD, playerUUID, materialId, null);
+            }
+        }
+        writeCompleted();
+    }
+
+    public synchronized <S extends Set<Material>> S load(UUID playerUUID, S materials) {
+        PlayerState state = players.get(playerUUID);
+        if (state != null) {
+            for (int id = state.materials.nextSetBit(0); id >= 0; id = state.materials.nextSetBit(id + 1)) {
+                Material material = id < materialsById.length ? materialsById[id] : null;
+                if (material != null) {
+                    materials.add(material);
+                }
+            }
+        }
+        return materials;
+    }
+
+    public synchronized Map<UUID, Integer> counts() {
+        Map<UUID, Integer> counts = new HashMap<>();
+        players.forEach((playerUUID, state) -> {
+            int count = state.materials.cardinality();
+            if (count > 0) {
+                counts.put(playerUUID, count);
+            }
+        });
+        return counts;
+    }
+
+    // Players with the most items first, ties in the order they reached the count
+    public synchronized LinkedHashMap<UUID, Integer> top(int limit) {
+        List<Map.Entry<UUID, PlayerState>> ranked = new ArrayList<>();
+        for (Map.Entry<UUID, PlayerState> entry : players.entrySet()) {
+            if (!entry.getValue().materials.isEmpty()) {
+                ranked.add(entry);
+            }
+        }
+        ranked.sort(Comparator.<Map.Entry<UUID, PlayerState>>comparingInt(entry -> -entry.getValue().materials.cardinality())
+                .thenComparingLong(entry -> entry.getValue().lastIncrease));
+
+        LinkedHashMap<UUID, Integer> top = new LinkedHashMap<>();
+        for (int i = 0; i < Math.min(limit, ranked.size()); i++) {
+            top.put(ranked.get(i).getKey(), ranked.get(i).getValue().materials.cardinality());
+        }
+        return top;
+    }
+
+    public synchronized void setNotificationsDisabled(UUID playerUUID, boolean disabled) throws IOException {
+        PlayerState state = players.get(playerUUID);
+        if (state != null && state.notificationsDisabled == disabled) {
+            return;
+        }
+        append(NOTIFICATIONS, playerUUID, disabled ? 1 : 0, null);
+        writeCompleted();
+    }
+
+    public synchronized Set<UUID> getNotificationsDisabled() {
+        Set<UUID> disabled = new HashSet<>();
+        players.forEach((playerUUID, state) -> {
+            if (state.notificationsDisabled) {
+                disabled.add(playerUUID);
+            }
+        });
+        return disabled;
+    }
+
+    public synchronized void setName(UUID playerUUID, String name) throws IOException {
+        PlayerState state = players.get(playerUUID);
+        if (state != null && name.equals(state.name)) {
+            return;
+        }
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        // Minecraft names are at most 16 ASCII characters
+        append(NAME, playerUUID, Math.min(nameBytes.length, NAME_BYTES), nameBytes);
+        writeCompleted();
+    }
+
+    public synchronized Map<UUID, String> getNames() {
+        Map<UUID, String> names = new HashMap<>();
+        players.forEach((playerUUID, state) -> {
+            if (state.name != null) {
+                names.put(playerUUID, state.name);
+            }
+        });
+        return names;
+    }
+
+    public synchronized void forEachPlayer(PlayerVisitor visitor) {
+        players.forEach((playerUUID, state) -> {
+            List<String> names = new ArrayList<>(state.materials.cardinality());
+            for (int id = state.materials.nextSetBit(0); id >= 0; id = state.materials.nextSetBit(id + 1)) {
+                if (id <= materialNames.size()) {
+                    names.add(materialNames.get(id - 1));
+                }
+            }
+            visitor.visit(playerUUID, names, state.notificationsDisabled, state.name);
+        });
+    }
+
+    public synchronized int getPlayerCount() {
+        return players.size();
+    }
+
+    public synchronized String getStats() {
+        return "players=" + players.size() + ", segments=" + (segmentNumber - firstSegment + 1)
+                + ", appended=" + appendedRecords + ", compactions=" + compactions
+                + ", last open=" + lastOpenMillis + "ms";
+    }
+
+    // True once compactAfterSegments segments have filled up since the last compaction
+    public synchronized boolean isCompactionDue() {
+        return segment != null && segmentNumber - firstSegment >= compactAfterSegments;
+    }
+
+    // Writes a snapshot of the current state and deletes every segment it covers. The state is
+    // copied under the store's lock, the snapshot is written without it.
+    public void compact() throws IOException {
+        synchronized (compactionLock) {
+            long start = System.currentTimeMillis();
+            Map<UUID, PlayerState> state;
+            long snapshotSequence;
+            int throughSegment;
+            synchronized (this) {
+                if (segment == null) {
+                    return;
+                }
+                // Later records go to a segment the snapshot doesn't cover
+                if (position > 0) {
+                    nextSegment();
+                }
+                throughSegment = segmentNumber - 1;
+                if (throughSegment < firstSegment) {
+                    return;
+                }
+                state = new HashMap<>(players.size() * 2);
+                for (Map.Entry<UUID, PlayerState> entry : players.entrySet()) {
+                    state.put(entry.getKey(), entry.getValue().copy());
+                }
+                snapshotSequence = sequence;
+            }
+
+            writeSnapshot(state, snapshotSequence, throughSegment);
+
+            synchronized (this) {
+                for (int number = firstSegment; number <= throughSegment; number++) {
+                    deleteSegment(number);
+                }
+                firstSegment = Math.max(firstSegment, throughSegment + 1);
+                compactions++;
+            }
+            logger.fine("Journal compacted " + state.size() + " players in " + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+
+    // Only writes the record, a full segment is replaced by a new one and compaction is left to
+    // the owner (see isCompactionDue)
+    private void append(byte type, UUID playerUUID, int value, byte[] name) throws IOException {
+        if (position == segmentCapacity) {
+            nextSegment();
+        }
+        scratch.clear();
+        scratch.put(type);
+        scratch.put((byte) 0);
+        scratch.putShort((short) value);
+        scratch.putLong(playerUUID.getMostSignificantBits());
+        scratch.putLong(playerUUID.getLeastSignificantBits());
+        Arrays.fill(nameField, (byte) 0);
+        if (name != null) {
+            System.arraycopy(name, 0, nameField, 0, Math.min(name.length, NAME_BYTES));
+        }
+        scratch.put(nameField);
+        crc.reset();
+        crc.update(scratch.array(), 0, CRC_OFFSET);
+        scratch.putInt((int) crc.getValue());
+
+        segment.put(position * RECORD_SIZE, scratch.array(), 0, RECORD_SIZE);
+        position++;
+        appendedRecords++;
+        apply(scratch, 0);
+    }
+
+    // Called once per public write, so a batch of records costs one flush
+    private void writeCompleted() throws IOException {
+        if (syncWrites) {
+            force();
+        }
+    }
+
+    private void force() {
+        if (segment != null && position > unforcedFrom) {
+            segment.force(unforcedFrom * RECORD_SIZE, (position - unforcedFrom) * RECORD_SIZE);
+            unforcedFrom = position;
+        }
+    }
+
+    private void apply(ByteBuffer buffer, int offset) {
+        byte type = buffer.get(offset);
+        int value = buffer.getShort(offset + 2) & 0xFFFF;
+        UUID playerUUID = new UUID(buffer.getLong(offset + 4), buffer.getLong(offset + 12));
+        PlayerState state = players.computeIfAbsent(playerUUID, key -> new PlayerState());
+        sequence++;
+
+        if (type == ADD) {
+            if (!state.materials.get(value)) {
+                state.materials.set(value);
+                state.lastIncrease = sequence;
+            }
+        } else if (type == REMOVE) {
+            state.materials.clear(value);
+        } else if (type == CLEAR) {
+            state.materials.clear();
+        } else if (type == NOTIFICATIONS) {
+            state.notificationsDisabled = value != 0;
+        } else if (type == NAME) {
+            byte[] name = new byte[Math.min(value, NAME_BYTES)];
+            buffer.get(offset + NAME_OFFSET, name);
+            state.name = new String(name, StandardCharsets.UTF_8);
+        }
+    }
+
+    // Applies the records of the mapped segment, returns the index after the last valid one
+    private int replaySegment(boolean last) {
+        for (int i = 0; i < segmentCapacity; i++) {
+            int offset = i * RECORD_SIZE;
+            if (segment.get(offset) == 0) {
+                return i;
+            }
+            crc.reset();
+            crc.update(segment.slice(offset, CRC_OFFSET));
+            if ((int) crc.getValue() != segment.getInt(offset + CRC_OFFSET)) {
+                if (last) {
+                    logger.warning("Journal segment " + segmentNumber + " ends with a partially written record,"
+                            + " discarding it (the last change before a crash)");
+                    // Zero the tail so the end of the log is found in the same place next time
+                    for (int b = offset; b < segmentCapacity * RECORD_SIZE; b++) {
+                        segment.put(b, (byte) 0);
+                    }
+                    segment.force();
+                } else {
+                    logger.severe("Journal segment " + segmentNumber + " is damaged at record " + i
+                            + ", the rest of that segment can't be read");
+                }
+                return i;
+            }
+            apply(segment, offset);
+            replayedRecords++;
+        }
+        return segmentCapacity;
+    }
+
+    private void nextSegment() throws IOException {
+        force();
+        closeSegment();
+        mapSegment(segmentNumber + 1);
+        position = 0;
+        unforcedFrom = 0;
+    }
+
+    private void mapSegment(int number) throws IOException {
+        File file = segmentFile(number);
+        boolean created = !file.exists();
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = created ? (long) segmentRecords * RECORD_SIZE : channel.size();
+        // Segments written with another segment size keep their own
+        segmentCapacity = (int) (size / RECORD_SIZE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) segmentCapacity * RECORD_SIZE);
+        segmentNumber = number;
+    }
+
+    private void closeSegment() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        // The mapping itself is released when the buffer is collected
+        channel = null;
+        segment = null;
+    }
+
+    private File segmentFile(int number) {
+        return new File(directory, String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    private List<Integer> listSegments() {
+        List<Integer> numbers = new ArrayList<>();
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                try {
+                    numbers.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    logger.warning("Ignoring unexpected file in journal directory: " + name);
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    private void deleteSegment(int number) {
+        File file = segmentFile(number);
+        // Windows refuses while the old mapping is still alive; it's deleted on the next start
+        if (file.exists() && !file.delete()) {
+            logger.fine("Could not delete journal segment " + file.getName() + " yet");
+        }
+    }
+
+    private void loadMaterials() throws IOException {
+        File file = new File(directory, MATERIALS_FILE);
+        materialNames.clear();
+        if (file.exists()) {
+            for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                if (!line.isEmpty()) {
+                    materialNames.add(line);
+                }
+            }
+        }
+
+        Set<String> known = new HashSet<>(materialNames);
+        List<String> added = new ArrayList<>();
+        for (Material material : Material.values()) {
+            if (material.isItem() && !material.isAir() && !known.contains(material.name())) {
+                added.add(material.name());
+            }
+        }
+        if (!added.isEmpty()) {
+            Files.write(file.toPath(), added, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+            materialNames.addAll(added);
+        }
+
+        materialIds = new int[Material.values().length];
+        materialsById = new Material[materialNames.size() + 1];
+        for (int i = 0; i < materialNames.size(); i++) {
+            try {
+                Material material = Material.valueOf(materialNames.get(i));
+                materialIds[material.ordinal()] = i + 1;
+                materialsById[i + 1] = material;
+            } catch (IllegalArgumentException e) {
+                // Written by a newer Minecraft version
+            }
+        }
+    }
+
+    // Returns the last segment number the snapshot covers, 0 if there is no snapshot
+    private int loadSnapshot() throws IOException {
+        File file = new File(directory, SNAPSHOT_FILE);
+        if (!file.exists()) {
+            return 0;
+        }
+        byte[] data = Files.readAllBytes(file.toPath());
+        if (data.length < 8) {
+            throw new IOException("Journal snapshot is truncated");
+        }
+        CRC32 check = new CRC32();
+        check.update(data, 0, data.length - 8);
+        if (check.getValue() != ByteBuffer.wrap(data, data.length - 8, 8).getLong()) {
+            // Never silently start from an empty state
+            throw new IOException("Journal snapshot checksum mismatch, restore " + SNAPSHOT_FILE + " from a backup");
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, data.length - 8))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a journal snapshot: " + file);
+            }
+            int version = in.readInt();
+            if (version != SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported journal snapshot version " + version);
+            }
+            int throughSegment = in.readInt();
+            sequence = in.readLong();
+            int playerCount = in.readInt();
+            for (int i = 0; i < playerCount; i++) {
+                UUID playerUUID = new UUID(in.readLong(), in.readLong());
+                PlayerState state = new PlayerState();
+                state.notificationsDisabled = in.readBoolean();
+                state.lastIncrease = in.readLong();
+                String name = in.readUTF();
+                state.name = name.isEmpty() ? null : name;
+                byte[] bits = new byte[in.readInt()];
+                in.readFully(bits);
+                state.materials.or(BitSet.valueOf(bits));
+                players.put(playerUUID, state);
+            }
+            return throughSegment;
+        }
+    }
+
+    private void writeSnapshot(Map<UUID, PlayerState> players, long sequence, int throughSegment) throws IOException {
+        File temp = new File(directory, SNAPSHOT_FILE + ".tmp");
+        CRC32 check = new CRC32();
+        try (FileOutputStream fileOut = new FileOutputStream(temp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(fileOut, check)));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(throughSegment);
+            out.writeLong(sequence);
+            out.writeInt(players.size());
+            for (Map.Entry<UUID, PlayerState> entry : players.entrySet()) {
+                PlayerState state = entry.getValue();
+                out.writeLong(entry.getKey().getMostSignificantBits());
+                out.writeLong(entry.getKey().getLeastSignificantBits());
+                out.writeBoolean(state.notificationsDisabled);
+                out.writeLong(state.lastIncrease);
+                out.writeUTF(state.name != null ? state.name : "");
+                byte[] bits = state.materials.toByteArray();
+                out.writeInt(bits.length);
+                out.write(bits);
+            }
+            out.flush();
+            // The checksum trailer is written past the checked stream
+            fileOut.write(ByteBuffer.allocate(8).putLong(check.getValue()).array());
+            fileOut.getFD().sync();
+        }
+        Files.move(temp.toPath(), new File(directory, SNAPSHOT_FILE).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
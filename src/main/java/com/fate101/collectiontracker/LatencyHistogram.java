@@ -0,0 +1,146 @@
+package com.fate101.collectiontracker;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Latency histogram cheap enough to record every event with: one bucket per power of two
+// nanoseconds, so recording is a leading-zero count and two uncontended LongAdder increments.
+// Percentiles are the upper bound of the bucket they fall in, so they read at most 2x high.
+public class LatencyHistogram {
+    // Bucket i holds durations below 2^i ns; the last one also takes anything above ~137 s
+    private static final int BUCKETS = 38;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos))].increment();
+        totalNanos.add(nanos);
+        if (nanos > maxNanos.get()) {
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+    }
+
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    // Reads the buckets once, so the count and the percentiles agree with each other
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+        long max = maxNanos.get();
+        return new Snapshot(count, totalNanos.sum(),
+                percentile(counts, count, 0.50, max),
+                percentile(counts, count, 0.95, max),
+                percentile(counts, count, 0.99, max),
+                max);
+    }
+
+    private static long percentile(long[] counts, long count, double fraction, long max) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * fraction);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                // Never report more than the slowest event actually seen
+                return Math.min(i == 0 ? 0 : (1L << i) - 1, max);
+            }
+        }
+        return max;
+    }
+
+    // Point-in-time view of a histogram. Its getters also make it a composite value in JMX.
+    public static class Snapshot {
+        private final long count;
+        private final long totalNanos;
+        private final long p50Nanos;
+        private final long p95Nanos;
+        private final long p99Nanos;
+        private final long maxNanos;
+
+        Snapshot(long count, long totalNanos, long p50Nanos, long p95Nanos, long p99Nanos, long maxNanos) {
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.p50Nanos = p50Nanos;
+            this.p95Nanos = p95Nanos;
+            this.p99Nanos = p99Nanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMeanNanos() {
+            return count > 0 ? totalNanos / count : 0;
+        }
+
+        public long getP50Nanos() {
+            return p50Nanos;
+        }
+
+        public long getP95Nanos() {
+            return p95Nanos;
+        }
+
+        public long getP99Nanos() {
+            return p99Nanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        // One line for chat and logs, e.g. "n=120 avg=41µs p50=32µs p95=65µs p99=131µs max=1.2ms"
+        public String format() {
+            if (count == 0) {
+                return "n=0";
+            }
+            return "n=" + count + " avg=" + formatNanos(getMeanNanos()) + " p50=" + formatNanos(p50Nanos)
+                    + " p95=" + formatNanos(p95Nanos) + " p99=" + formatNanos(p99Nanos) + " max=" + formatNanos(maxNanos);
+        }
+
+        public static String formatNanos(long nanos) {
+            if (nanos < 1_000) {
+                return nanos + "ns";
+            }
+            if (nanos < 1_000_000) {
+                return (nanos / 1_000) + "µs";
+            }
+            if (nanos < 1_000_000_000) {
+                return String.format("%.1fms", nanos / 1_000_000.0);
+            }
+            return String.format("%.2fs", nanos / 1_000_000_000.0);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.fate101.collectiontracker;
+
+import java.util.*;
+
+// Ranks players by item count without sorting. Players are kept in one bucket per possible
+// count, and a Fenwick tree over the bucket sizes answers "how many players have more items
+// than this" in O(log n). Updating a player's count moves them between two buckets.
+// Public methods are synchronized so handlers and background tasks on any thread can use it;
+// every operation is a few array updates, so the lock is held only briefly.
+public class LeaderboardIndex {
+    private final int maxCount;
+    private final Map<UUID, Integer> counts = new HashMap<>();
+    // buckets[c] holds the players with exactly c items, in the order they reached it
+    private final LinkedHashSet<UUID>[] buckets;
+    // Fenwick tree over bucket sizes, 1-based by count
+    private final int[] tree;
+    private int participants;
+    private long totalItems;
+    private int topCount;
+
+    @SuppressWarnings("unchecked")
+    public LeaderboardIndex(int maxCount) {
+        this.maxCount = maxCount;
+        this.buckets = new LinkedHashSet[maxCount + 1];
+        this.tree = new int[maxCount + 1];
+    }
+
+    public synchronized void update(UUID playerUUID, int count) {
+        count = Math.max(0, Math.min(count, maxCount));
+        Integer previous = count > 0 ? counts.put(playerUUID, count) : counts.remove(playerUUID);
+        int oldCount = previous != null ? previous : 0;
+        if (oldCount == count) {
+            return;
+        }
+
+        if (oldCount > 0) {
+            buckets[oldCount].remove(playerUUID);
+            adjust(oldCount, -1);
+            participants--;
+        }
+        if (count > 0) {
+            if (buckets[count] == null) {
+                buckets[count] = new LinkedHashSet<>();
+            }
+            buckets[count].add(playerUUID);
+            adjust(count, 1);
+            participants++;
+        }
+        totalItems += count - oldCount;
+
+        if (count > topCount) {
+            topCount = count;
+        } else if (oldCount == topCount) {
+            while (topCount > 0 && (buckets[topCount] == null || buckets[topCount].isEmpty())) {
+                topCount--;
+            }
+        }
+    }
+
+    // Reads the size under the lock, so concurrent updates for one player can't apply an
+    // older count after a newer one
+    public synchronized void update(UUID playerUUID, Collection<?> collection) {
+        update(playerUUID, collection.size());
+    }
+
+    public synchronized int getCount(UUID playerUUID) {
+        return counts.getOrDefault(playerUUID, 0);
+    }
+
+    // 1-based rank, players with the same count share a rank. 0 if the player has no items.
+    public synchronized int getRank(UUID playerUUID) {
+        int count = getCount(playerUUID);
+        if (count == 0) {
+            return 0;
+        }
+        return participants - prefixSum(count) + 1;
+    }
+
+    // Players with the most items first, ties in the order they reached the count
+    public synchronized List<UUID> getTop(int limit) {
+        List<UUID> top = new ArrayList<>(Math.min(limit, participants));
+        for (int count = topCount; count > 0 && top.size() < limit; count--) {
+            if (buckets[count] == null) {
+                continue;
+            }
+            for (UUID playerUUID : buckets[count]) {
+                top.add(playerUUID);
+                if (top.size() == limit) {
+                    break;
+                }
+            }
+        }
+        return top;
+    }
+
+    public synchronized int getParticipants() {
+        return participants;
+    }
+
+    public synchronized int getTopCount() {
+        return topCount;
+    }
+
+    public synchronized double getAverageCount() {
+        return participants == 0 ? 0.0 : (double) totalItems / participants;
+    }
+
+    private void adjust(int count, int delta) {
+        for (int i = count; i <= maxCount; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    // Number of players with at most `count` items
+    private int prefixSum(int count) {
+        int sum = 0;
+        for (int i = count; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,535 @@
+package com.fate101.collectiontracker;
+
+import org.bukkit.Material;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.*;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+// Copies the plugin's tables from one database to another in chunks. Each table is read through
+// one forward-only cursor in key order and never held in memory: every chunk of rows is written
+// as one JDBC batch, committed as one transaction and recorded in a checkpoint file, so memory
+// stays at one chunk whatever the table size and a migration that fails part way resumes
+// after the last committed chunk.
+// Inserts ignore rows that already exist and bitset blobs are OR-ed into the target's row:
+// replaying a chunk that was committed but not yet checkpointed is harmless, and a target that
+// already holds collections keeps them.
+public class MigrationEngine {
+    private static final String CHECKPOINT_FILE = "migration-checkpoint.yml";
+    private static final long PROGRESS_LOG_INTERVAL_MS = 5000;
+
+    private final Logger logger;
+    private final File checkpointFile;
+    private final int chunkSize;
+    private final int maxRowsPerSecond;
+    private final ProgressListener progressListener;
+
+    // Called from the migrating thread every few seconds
+    public interface ProgressListener {
+        void onProgress(String table, long rows, long totalRows, long rowsPerSecond);
+    }
+
+    public MigrationEngine(JavaPlugin plugin) {
+        this(plugin, null);
+    }
+
+    public MigrationEngine(JavaPlugin plugin, ProgressListener progressListener) {
+        this.logger = plugin.getLogger();
+        this.checkpointFile = new File(plugin.getDataFolder(), CHECKPOINT_FILE);
+        this.chunkSize = Math.max(1, plugin.getConfig().getInt("database.migration.chunk-size", 1000));
+        this.maxRowsPerSecond = Math.max(0, plugin.getConfig().getInt("database.migration.max-rows-per-second", 10000));
+        this.progressListener = progressListener;
+    }
+
+    // Tables in copy order, with the key used to page through them. The dictionaries go first;
+    // collection rows are copied by UUID and material name and pick up the target's own ids, so
+    // the two databases don't need to agree on id values.
+    private enum Table {
+        PLAYERS("players", "player_uuid",
+                "SELECT player_uuid FROM players WHERE player_uuid > ? ORDER BY player_uuid",
+                "INTO players (player_uuid) VALUES (?)") {
+            @Override
+            boolean bindRow(ResultSet rs, PreparedStatement insert, PreparedStatement existing, MaterialRemap remap) throws SQLException {
+                String uuidString = rs.getString("player_uuid");
+                if (!isValidUUID(uuidString)) {
+                    return false;
+                }
+                insert.setString(1, uuidString);
+                return true;
+            }
+        },
+        MATERIALS("materials", "material_name",
+                "SELECT material_name FROM materials WHERE material_name > ? ORDER BY material_name",
+                "INTO materials (material_name) VALUES (?)") {
+            @Override
+            boolean bindRow(ResultSet rs, PreparedStatement insert, PreparedStatement existing, MaterialRemap remap) throws SQLException {
+                // Names this server version doesn't know are copied too, another server may use them
+                insert.setString(1, rs.getString("material_name"));
+                return true;
+            }
+        },
+        COLLECTIONS("collection_items", "player_id:material_id",
+                """
+                SELECT ci.player_id, ci.material_id, p.player_uuid, m.material_name, ci.collected_at
+                FROM collection_items ci
+                JOIN players p ON p.id = ci.player_id
+                JOIN materials m ON m.id = ci.material_id
+                WHERE (ci.player_id, ci.material_id) > (?, ?)
+                ORDER BY ci.player_id, ci.material_id
+                """,
+                "INTO collection_items (player_id, material_id, collected_at) "
+                        + "SELECT p.id, m.id, COALESCE(?, CURRENT_TIMESTAMP) FROM players p, materials m "
+                        + "WHERE p.player_uuid = ? AND m.material_name = ?") {
+            @Override
+            boolean bindRow(ResultSet rs, PreparedStatement insert, PreparedStatement existing, MaterialRemap remap) throws SQLException {
+                String uuidString = rs.getString("player_uuid");
+                String materialName = rs.getString("material_name");
+                if (!isValidUUID(uuidString) || !isCollectibleMaterial(materialName)) {
+                    return false;
+                }
+                // Copied as text so both drivers keep the original value without timezone shifts
+                insert.setString(1, rs.getString("collected_at"));
+                insert.setString(2, uuidString);
+                insert.setString(3, materialName);
+                return true;
+            }
+
+            @Override
+            String keyOf(ResultSet rs) throws SQLException {
+                return rs.getLong("player_id") + ":" + rs.getLong("material_id");
+            }
+
+            @Override
+            void bindAfter(PreparedStatement select, String lastKey) throws SQLException {
+                long playerId = 0;
+                long materialId = 0;
+                if (lastKey != null) {
+                    int separator = lastKey.indexOf(':');
+                    playerId = Long.parseLong(lastKey.substring(0, separator));
+                    materialId = Long.parseLong(lastKey.substring(separator + 1));
+                }
+                select.setLong(1, playerId);
+                select.setLong(2, materialId);
+            }
+        },
+        // Bit positions are material ids, which differ between the databases, so every blob is
+        // re-encoded with the target's ids. A player can already have a row in the target, from
+        // a database the network used before or an earlier run, so the blob is merged into that
+        // row the way CollectionSchema.convertLayout merges one, never dropped.
+        BITSETS("collection_bitsets", "player_id",
+                """
+                SELECT b.player_id, p.player_uuid, b.bits
+                FROM collection_bitsets b
+                JOIN players p ON p.id = b.player_id
+                WHERE b.player_id > ?
+                ORDER BY b.player_id
+                """,
+                "INTO collection_bitsets (player_id, item_count, bits) "
+                        + "SELECT p.id, ?, ? FROM players p WHERE p.player_uuid = ?") {
+            @Override
+            String insertSql(boolean mysqlTarget) {
+                if (mysqlTarget) {
+                    return "INSERT " + insertInto
+                            + " ON DUPLICATE KEY UPDATE item_count = VALUES(item_count), bits = VALUES(bits)";
+                }
+                // The WHERE clause keeps SQLite from reading ON CONFLICT as part of the SELECT
+                return "INSERT " + insertInto
+                        + " ON CONFLICT(player_id) DO UPDATE SET item_count = excluded.item_count, bits = excluded.bits,"
+                        + " updated_at = CURRENT_TIMESTAMP";
+            }
+
+            // Locks the row on MySQL until the chunk commits, like the plugin's own bitset writes
+            @Override
+            String existingSql(boolean mysqlTarget) {
+                return "SELECT b.bits FROM collection_bitsets b JOIN players p ON p.id = b.player_id WHERE p.player_uuid = ?"
+                        + (mysqlTarget ? " FOR UPDATE" : "");
+            }
+
+            @Override
+            boolean bindRow(ResultSet rs, PreparedStatement insert, PreparedStatement existing, MaterialRemap remap) throws SQLException {
+                String uuidString = rs.getString("player_uuid");
+                if (!isValidUUID(uuidString)) {
+                    return false;
+                }
+                BitSet sourceBits;
+                try {
+                    sourceBits = CollectionBitset.decode(rs.getBytes("bits"));
+                } catch (IllegalArgumentException e) {
+                    return false;
+                }
+                BitSet targetBits = new BitSet();
+                for (int id = sourceBits.nextSetBit(0); id >= 0; id = sourceBits.nextSetBit(id + 1)) {
+                    int targetId = remap.targetId(id);
+                    if (targetId != 0) {
+                        targetBits.set(targetId);
+                    }
+                }
+                existing.setString(1, uuidString);
+                try (ResultSet current = existing.executeQuery()) {
+                    if (current.next()) {
+                        try {
+                            targetBits.or(CollectionBitset.decode(current.getBytes(1)));
+                        } catch (IllegalArgumentException e) {
+                            // Refuse to write over a blob we can't read, it may be from a newer plugin version
+                            throw new SQLException("Stored collection of player " + uuidString
+                                    + " in the target can't be read: " + e.getMessage(), e);
+                        }
+                    }
+                }
+                insert.setInt(1, targetBits.cardinality());
+                insert.setBytes(2, CollectionBitset.encode(targetBits));
+                insert.setString(3, uuidString);
+                return true;
+            }
+
+            @Override
+            boolean remapsMaterials() {
+                return true;
+            }
+
+            @Override
+            void bindAfter(PreparedStatement select, String lastKey) throws SQLException {
+                select.setLong(1, lastKey != null ? Long.parseLong(lastKey) : 0);
+            }
+        },
+        NOTIFICATIONS("player_notifications", "player_uuid",
+                "SELECT player_uuid, notifications_disabled FROM player_notifications WHERE player_uuid > ? ORDER BY player_uuid",
+                "INTO player_notifications (player_uuid, notifications_disabled) VALUES (?, ?)") {
+            @Override
+            boolean bindRow(ResultSet rs, PreparedStatement insert, PreparedStatement existing, MaterialRemap remap) throws SQLException {
+                String uuidString = rs.getString("player_uuid");
+                if (!isValidUUID(uuidString)) {
+                    return false;
+                }
+                insert.setString(1, uuidString);
+                insert.setBoolean(2, rs.getBoolean("notifications_disabled"));
+                return true;
+            }
+        },
+        PROFILES("player_profiles", "player_uuid",
+                "SELECT player_uuid, player_name FROM player_profiles WHERE player_uuid > ? ORDER BY player_uuid",
+                "INTO player_profiles (player_uuid, player_name) VALUES (?, ?)") {
+            @Override
+            boolean bindRow(ResultSet rs, PreparedStatement insert, PreparedStatement existing, MaterialRemap remap) throws SQLException {
+                String uuidString = rs.getString("player_uuid");
+                if (!isValidUUID(uuidString)) {
+                    return false;
+                }
+                insert.setString(1, uuidString);
+                insert.setString(2, rs.getString("player_name"));
+                return true;
+            }
+        };
+
+        final String tableName;
+        final String keyColumn;
+        final String selectSql;
+        final String insertInto;
+
+        Table(String tableName, String keyColumn, String selectSql, String insertInto) {
+            this.tableName = tableName;
+            this.keyColumn = keyColumn;
+            this.selectSql = selectSql;
+            this.insertInto = insertInto;
+        }
+
+        // Binds one source row to the insert statement, false if the row is invalid and skipped.
+        // existing runs existingSql on the target, null for tables that don't merge.
+        abstract boolean bindRow(ResultSet rs, PreparedStatement insert, PreparedStatement existing, MaterialRemap remap) throws SQLException;
+
+        String insertSql(boolean mysqlTarget) {
+            return (mysqlTarget ? "INSERT IGNORE " : "INSERT OR IGNORE ") + insertInto;
+        }
+
+        // Reads the target's current row for tables that merge into it instead of ignoring it
+        String existingSql(boolean mysqlTarget) {
+            return null;
+        }
+
+        boolean remapsMaterials() {
+            return false;
+        }
+
+        // Key of the current row as stored in the checkpoint
+        String keyOf(ResultSet rs) throws SQLException {
+            return rs.getString(keyColumn);
+        }
+
+        void bindAfter(PreparedStatement select, String lastKey) throws SQLException {
+            select.setString(1, lastKey != null ? lastKey : "");
+        }
+    }
+
+    // Maps material ids of the source database to ids of the same materials in the target
+    private static final class MaterialRemap {
+        private final Map<Integer, Integer> targetIds = new HashMap<>();
+
+        static MaterialRemap load(Connection source, Connection target) throws SQLException {
+            Map<String, Integer> targetByName = new HashMap<>();
+            try (Statement stmt = target.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT id, material_name FROM materials")) {
+                while (rs.next()) {
+                    targetByName.put(rs.getString("material_name"), rs.getInt("id"));
+                }
+            }
+            MaterialRemap remap = new MaterialRemap();
+            try (Statement stmt = source.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT id, material_name FROM materials")) {
+                while (rs.next()) {
+                    Integer targetId = targetByName.get(rs.getString("material_name"));
+                    if (targetId != null) {
+                        remap.targetIds.put(rs.getInt("id"), targetId);
+                    }
+                }
+            }
+            return remap;
+        }
+
+        // 0 when the target has no such material
+        int targetId(int sourceId) {
+            return targetIds.getOrDefault(sourceId, 0);
+        }
+    }
+
+    public static class Result {
+        private final long[] rows = new long[Table.values().length];
+        private long skippedRows;
+        private long elapsedMillis;
+
+        public long getPlayerRows() {
+            return rows[Table.PLAYERS.ordinal()];
+        }
+
+        public long getCollectionRows() {
+            return rows[Table.COLLECTIONS.ordinal()];
+        }
+
+        public long getBitsetRows() {
+            return rows[Table.BITSETS.ordinal()];
+        }
+
+        public long getNotificationRows() {
+            return rows[Table.NOTIFICATIONS.ordinal()];
+        }
+
+        public long getProfileRows() {
+            return rows[Table.PROFILES.ordinal()];
+        }
+
+        public long getSkippedRows() {
+            return skippedRows;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+    }
+
+    // True if an unfinished migration in this direction left a checkpoint behind
+    public boolean hasCheckpoint(String sourceType, String targetType) {
+        if (!checkpointFile.exists()) {
+            return false;
+        }
+        return direction(sourceType, targetType).equals(YamlConfiguration.loadConfiguration(checkpointFile).getString("direction"));
+    }
+
+    public Result migrate(Connection source, Connection target, String sourceType, String targetType) throws SQLException {
+        String direction = direction(sourceType, targetType);
+        YamlConfiguration checkpoint = checkpointFile.exists()
+                ? YamlConfiguration.loadConfiguration(checkpointFile) : new YamlConfiguration();
+        if (!direction.equals(checkpoint.getString("direction"))) {
+            // Left over from a migration the other way, its progress doesn't apply here
+            checkpoint = new YamlConfiguration();
+            checkpoint.set("direction", direction);
+        } else {
+            logger.info("Found migration checkpoint, resuming " + direction + " migration");
+        }
+
+        long started = System.currentTimeMillis();
+        Result result = new Result();
+        boolean mysqlTarget = "mysql".equals(targetType);
+        if ("mysql".equals(sourceType)) {
+            // A streaming result keeps the server writing while we insert; give it time between reads
+            try (Statement stmt = source.createStatement()) {
+                stmt.execute("SET SESSION net_write_timeout = 600");
+            }
+        }
+        boolean autoCommit = target.getAutoCommit();
+        target.setAutoCommit(false);
+        try {
+            for (Table table : Table.values()) {
+                result.rows[table.ordinal()] = copyTable(source, target, table, "mysql".equals(sourceType), mysqlTarget, checkpoint, result);
+            }
+        } finally {
+            target.setAutoCommit(autoCommit);
+        }
+        result.elapsedMillis = System.currentTimeMillis() - started;
+
+        if (checkpointFile.exists() && !checkpointFile.delete()) {
+            logger.warning("Could not delete migration checkpoint " + checkpointFile.getName());
+        }
+        return result;
+    }
+
+    private long copyTable(Connection source, Connection target, Table table, boolean mysqlSource, boolean mysqlTarget,
+                           YamlConfiguration checkpoint, Result result) throws SQLException {
+        String section = "tables." + table.tableName;
+        long rows = checkpoint.getLong(section + ".rows", 0);
+        if (checkpoint.getBoolean(section + ".done", false)) {
+            logger.info("Skipping " + table.tableName + ", already migrated (" + rows + " rows)");
+            return rows;
+        }
+        String lastKey = checkpoint.getString(section + ".last-key", null);
+        if (lastKey != null) {
+            logger.info("Resuming " + table.tableName + " after " + table.keyColumn + " " + lastKey + " (" + rows + " rows done)");
+        }
+
+        long total = countRows(source, table);
+        MaterialRemap remap = table.remapsMaterials() ? MaterialRemap.load(source, target) : null;
+        long copiedThisRun = 0;
+        long started = System.currentTimeMillis();
+        long lastReport = started;
+
+        try (PreparedStatement select = source.prepareStatement(table.selectSql,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+             PreparedStatement insert = target.prepareStatement(table.insertSql(mysqlTarget));
+             PreparedStatement existing = table.existingSql(mysqlTarget) != null
+                     ? target.prepareStatement(table.existingSql(mysqlTarget)) : null) {
+            // Connector/J only streams row by row with this exact fetch size, any other value
+            // buffers the whole result. Other drivers read chunk-sized pages.
+            select.setFetchSize(mysqlSource ? Integer.MIN_VALUE : chunkSize);
+            table.bindAfter(select, lastKey);
+
+            try (ResultSet rs = select.executeQuery()) {
+                int pending = 0;
+                while (true) {
+                    boolean hasRow = rs.next();
+                    if (hasRow) {
+                        pending++;
+                        lastKey = table.keyOf(rs);
+                        if (table.bindRow(rs, insert, existing, remap)) {
+                            insert.addBatch();
+                        } else {
+                            result.skippedRows++;
+                        }
+                        if (pending < chunkSize) {
+                            continue;
+                        }
+                    }
+                    if (pending == 0) {
+                        break;
+                    }
+
+                    try {
+                        insert.executeBatch();
+                        target.commit();
+                    } catch (SQLException e) {
+                        target.rollback();
+                        throw e;
+                    }
+
+                    rows += pending;
+                    copiedThisRun += pending;
+                    pending = 0;
+                    checkpoint.set(section + ".last-key", lastKey);
+                    checkpoint.set(section + ".rows", rows);
+                    saveCheckpoint(checkpoint);
+
+                    throttle(copiedThisRun, started);
+                    long now = System.currentTimeMillis();
+                    if (now - lastReport >= PROGRESS_LOG_INTERVAL_MS) {
+                        lastReport = now;
+                        long rate = rowsPerSecond(copiedThisRun, now - started);
+                        logger.info(String.format("Migrating %s: %d/%d rows (%.0f%%), %d rows/s", table.tableName,
+                                rows, total, total > 0 ? rows * 100.0 / total : 100.0, rate));
+                        if (progressListener != null) {
+                            progressListener.onProgress(table.tableName, rows, total, rate);
+                        }
+                    }
+                    if (!hasRow) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        checkpoint.set(section + ".done", true);
+        saveCheckpoint(checkpoint);
+        long elapsed = System.currentTimeMillis() - started;
+        logger.info("Migrated " + rows + " rows of " + table.tableName + " in " + elapsed + "ms ("
+                + rowsPerSecond(copiedThisRun, elapsed) + " rows/s)");
+        return rows;
+    }
+
+    // Sleeps between chunks to stay under max-rows-per-second. The pauses also leave the
+    // destination free for the server's own writes, which matters most for SQLite.
+    private void throttle(long copied, long startedMillis) throws SQLException {
+        if (maxRowsPerSecond <= 0) {
+            return;
+        }
+        long aheadMillis = copied * 1000 / maxRowsPerSecond - (System.currentTimeMillis() - startedMillis);
+        if (aheadMillis > 0) {
+            try {
+                Thread.sleep(aheadMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Migration interrupted", e);
+            }
+        }
+    }
+
+    private long countRows(Connection source, Table table) throws SQLException {
+        try (Statement stmt = source.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table.tableName)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private void saveCheckpoint(YamlConfiguration checkpoint) {
+        try {
+            checkpoint.save(checkpointFile);
+        } catch (IOException e) {
+            // The chunk is committed either way, a missing checkpoint only means more replay on resume
+            logger.warning("Could not save migration checkpoint: " + e.getMessage());
+        }
+    }
+
+    private static long rowsPerSecond(long rows, long elapsedMillis) {
+        return elapsedMillis > 0 ? rows * 1000 / elapsedMillis : rows;
+    }
+
+    private static String direction(String sourceType, String targetType) {
+        return sourceType + "->" + targetType;
+    }
+
+    private static boolean isValidUUID(String uuidString) {
+        if (uuidString == null) {
+            return false;
+        }
+        try {
+            UUID.fromString(uuidString);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static boolean isCollectibleMaterial(String materialName) {
+        if (materialName == null) {
+            return false;
+        }
+        try {
+            Material material = Material.valueOf(materialName);
+            return material.isItem() && !material.isAir();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.fate101.collectiontracker;
+
+import org.bukkit.Material;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// A player's collection stored as one bit per collectible item. A completionist costs about
+// 200 bytes instead of the ~50 KB of nodes a HashSet<Material> needs for the same items.
+// Materials that aren't collectible can't be stored and are ignored by add().
+// Bits are updated with compare-and-set, so handlers on different threads can add items to
+// the same collection without a lock and reads never block. Iteration is weakly consistent.
+public class PlayerCollection extends AbstractSet<Material> {
+    private final CollectibleItems items;
+    private final AtomicLongArray words;
+    private final AtomicInteger count = new AtomicInteger();
+
+    public PlayerCollection(CollectibleItems items) {
+        this.items = items;
+        this.words = new AtomicLongArray((items.size() + 63) >>> 6);
+    }
+
+    // Rough heap cost of one cached collection on a 64-bit JVM with compressed references: this
+    // object, the AtomicLongArray and its long[], the AtomicInteger, and the UUID key and map
+    // node it is cached under.
+    public static long estimateHeapBytes(int collectibleItems) {
+        long words = (collectibleItems + 63) >>> 6;
+        return 24 + 16 + (16 + 8 * words) + 16 + 32 + 32;
+    }
+
+    public boolean contains(int index) {
+        return (words.get(index >>> 6) & (1L << index)) != 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Material)) {
+            return false;
+        }
+        int index = items.indexOf((Material) o);
+        return index >= 0 && contains(index);
+    }
+
+    @Override
+    public boolean add(Material material) {
+        int index = items.indexOf(material);
+        if (index < 0) {
+            return false;
+        }
+        return set(index);
+    }
+
+    // True only for the caller that actually set the bit, so a discovery is reported once
+    // even if two threads race on the same item
+    public boolean set(int index) {
+        long mask = 1L << index;
+        int word = index >>> 6;
+        long current;
+        do {
+            current = words.get(word);
+            if ((current & mask) != 0) {
+                return false;
+            }
+        } while (!words.compareAndSet(word, current, current | mask));
+        count.incrementAndGet();
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof Material)) {
+            return false;
+        }
+        int index = items.indexOf((Material) o);
+        if (index < 0) {
+            return false;
+        }
+        long mask = 1L << index;
+        int word = index >>> 6;
+        long current;
+        do {
+            current = words.get(word);
+            if ((current & mask) == 0) {
+                return false;
+            }
+        } while (!words.compareAndSet(word, current, current & ~mask));
+        count.decrementAndGet();
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < words.length(); i++) {
+            count.addAndGet(-Long.bitCount(words.getAndSet(i, 0L)));
+        }
+    }
+
+    @Override
+    public int size() {
+        return count.get();
+    }
+
+    // Independent copy for background work (saving, exports). Each word is read atomically;
+    // since collections only grow outside of repairs, the copy never holds an item the player
+    // didn't collect and its size always matches its bits.
+    public PlayerCollection snapshot() {
+        PlayerCollection copy = new PlayerCollection(items);
+        int copied = 0;
+        for (int i = 0; i < words.length(); i++) {
+            long bits = words.get(i);
+            copy.words.set(i, bits);
+            copied += Long.bitCount(bits);
+        }
+        copy.count.set(copied);
+        return copy;
+    }
+
+    // Sets every bit of the other collection in this one and returns the items that were new
+    public List<Material> merge(PlayerCollection other) {
+        List<Material> added = new ArrayList<>();
+        for (int index = other.nextSetBit(0); index >= 0; index = other.nextSetBit(index + 1)) {
+            if (set(index)) {
+                added.add(items.get(index));
+            }
+        }
+        return added;
+    }
+
+    @Override
+    public Iterator<Material> iterator() {
+        return new Iterator<>() {
+            private int next = nextSetBit(0);
+            private int last = -1;
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public Material next() {
+                if (next < 0) {
+                    throw new NoSuchElementException();
+                }
+                last = next;
+                next = nextSetBit(next + 1);
+                return items.get(last);
+            }
+
+            @Override
+            public void remove() {
+                if (last < 0) {
+                    throw new IllegalStateException();
+                }
+                PlayerCollection.this.remove(items.get(last));
+                last = -1;
+            }
+        };
+    }
+
+    private int nextSetBit(int fromIndex) {
+        int word = fromIndex >>> 6;
+        if (word >= words.length()) {
+            return -1;
+        }
+        long bits = words.get(word) & (-1L << fromIndex);
+        while (true) {
+            if (bits != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(bits);
+            }
+            if (++word == words.length()) {
+                return -1;
+            }
+            bits = words.get(word);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.fate101.collectiontracker;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.profile.PlayerProfile;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Player names and skull profiles for the leaderboard. Names are stored in the database and
+// refreshed on join, so rendering /coltop only reads memory and never asks the server to
+// resolve an offline player. Unknown names are looked up in the background and show up the
+// next time the leaderboard is opened.
+public class PlayerProfileCache {
+    private static final String UNKNOWN_NAME = "Unknown Player";
+
+    private final JavaPlugin plugin;
+    private final DatabaseManager databaseManager;
+    private final Map<UUID, String> names = new ConcurrentHashMap<>();
+    private final Set<UUID> pendingLookups = ConcurrentHashMap.newKeySet();
+    // Most recently used skull profiles, main thread only
+    private final Map<UUID, PlayerProfile> profiles;
+
+    public PlayerProfileCache(JavaPlugin plugin, DatabaseManager databaseManager) {
+        this.plugin = plugin;
+        this.databaseManager = databaseManager;
+
+        int maxProfiles = Math.max(1, plugin.getConfig().getInt("performance.profile-cache.skull-cache-size", 256));
+        this.profiles = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, PlayerProfile> eldest) {
+                return size() > maxProfiles;
+            }
+        };
+    }
+
+    public void load() {
+        names.putAll(databaseManager.loadPlayerNames());
+        plugin.getLogger().info("Loaded " + names.size() + " cached player names");
+    }
+
+    // Called on join with the player's current name and full profile (including skin)
+    public void refresh(Player player) {
+        UUID playerUUID = player.getUniqueId();
+        String name = player.getName();
+        profiles.put(playerUUID, player.getPlayerProfile());
+
+        if (!name.equals(names.put(playerUUID, name))) {
+            plugin.getServer().getScheduler().runTaskAsynchronously(plugin,
+                    () -> databaseManager.savePlayerName(playerUUID, name));
+        }
+    }
+
+    public String getName(UUID playerUUID) {
+        String name = names.get(playerUUID);
+        if (name == null) {
+            lookupNameAsync(playerUUID);
+            return UNKNOWN_NAME;
+        }
+        return name;
+    }
+
+    public PlayerProfile getProfile(UUID playerUUID) {
+        PlayerProfile profile = profiles.get(playerUUID);
+        if (profile == null) {
+            // Built locally from the UUID and cached name, the client fetches the skin itself
+            String name = names.get(playerUUID);
+            profile = Bukkit.createPlayerProfile(playerUUID, name);
+            profiles.put(playerUUID, profile);
+        }
+        return profile;
+    }
+
+    public int getNameCount() {
+        return names.size();
+    }
+
+    public int getProfileCount() {
+        return profiles.size();
+    }
+
+    // Players recorded before names were stored: resolve once off the main thread and persist
+    private void lookupNameAsync(UUID playerUUID) {
+        if (!pendingLookups.add(playerUUID)) {
+            return;
+        }
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            try {
+                String name = Bukkit.getOfflinePlayer(playerUUID).getName();
+                if (name != null) {
+                    names.put(playerUUID, name);
+                    databaseManager.savePlayerName(playerUUID, name);
+                }
+            } catch (Exception e) {
+                plugin.getLogger().warning("Could not resolve name for " + playerUUID + ": " + e.getMessage());
+            }
+        });
+    }
+}
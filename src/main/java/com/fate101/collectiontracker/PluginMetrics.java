@@ -0,0 +1,246 @@
+package com.fate101.collectiontracker;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+// Collects the plugin's runtime numbers in one place for /collectiontracker stats and JMX.
+// Recording only touches LongAdders (see LatencyHistogram); everything else is read from the
+// plugin's components when a report is asked for, so the counters are always on.
+public class PluginMetrics implements CollectionTrackerMXBean {
+    private static final String OBJECT_NAME = "com.fate101.collectiontracker:type=Metrics";
+    // Per leaderboard participant: its HashMap node, its entry in a bucket's LinkedHashSet and a boxed count
+    private static final long LEADERBOARD_BYTES_PER_PLAYER = 32 + 40 + 16;
+
+    private final CollectionTracker plugin;
+    private final Map<String, Long> startupPhases = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final LatencyHistogram collectionGui = new LatencyHistogram();
+    private final LatencyHistogram leaderboardGui = new LatencyHistogram();
+    private ObjectName objectName;
+
+    public PluginMetrics(CollectionTracker plugin) {
+        this.plugin = plugin;
+    }
+
+    // Records a startup phase that began at startNanos, returns the time to start the next one from
+    public long startupPhase(String phase, long startNanos) {
+        long now = System.nanoTime();
+        startupPhases.put(phase, (now - startNanos) / 1_000_000);
+        return now;
+    }
+
+    public void collectionGuiBuilt(long startNanos) {
+        collectionGui.recordSince(startNanos);
+    }
+
+    public void leaderboardGuiBuilt(long startNanos) {
+        leaderboardGui.recordSince(startNanos);
+    }
+
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            // Left behind by a previous instance that wasn't disabled cleanly
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            objectName = name;
+        } catch (JMException e) {
+            plugin.getLogger().warning("Failed to register the JMX metrics bean: " + e.getMessage());
+        }
+    }
+
+    public void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            plugin.getLogger().warning("Failed to unregister the JMX metrics bean: " + e.getMessage());
+        }
+        objectName = null;
+    }
+
+    @Override
+    public Map<String, LatencyHistogram.Snapshot> getHandlerLatencies() {
+        Map<String, LatencyHistogram.Snapshot> latencies = new LinkedHashMap<>();
+        DiscoveryStats stats = plugin.getDiscoveryStats();
+        if (stats != null) {
+            for (DiscoveryStats.Source source : DiscoveryStats.Source.values()) {
+                latencies.put(source.name().toLowerCase(), stats.getLatency(source));
+            }
+        }
+        return latencies;
+    }
+
+    @Override
+    public Map<String, Long> getHandlerDiscoveries() {
+        Map<String, Long> discoveries = new LinkedHashMap<>();
+        DiscoveryStats stats = plugin.getDiscoveryStats();
+        if (stats != null) {
+            for (DiscoveryStats.Source source : DiscoveryStats.Source.values()) {
+                discoveries.put(source.name().toLowerCase(), stats.getDiscoveries(source));
+            }
+        }
+        return discoveries;
+    }
+
+    @Override
+    public Map<String, LatencyHistogram.Snapshot> getDatabaseLatencies() {
+        Map<String, LatencyHistogram.Snapshot> latencies = new LinkedHashMap<>();
+        DatabaseManager databaseManager = plugin.getDatabaseManager();
+        if (databaseManager != null) {
+            for (DatabaseManager.Operation operation : DatabaseManager.Operation.values()) {
+                latencies.put(operation.name().toLowerCase(), databaseManager.getLatency(operation));
+            }
+        }
+        return latencies;
+    }
+
+    @Override
+    public Map<String, LatencyHistogram.Snapshot> getGuiBuildLatencies() {
+        Map<String, LatencyHistogram.Snapshot> latencies = new LinkedHashMap<>();
+        latencies.put("collection", collectionGui.snapshot());
+        latencies.put("leaderboard", leaderboardGui.snapshot());
+        return latencies;
+    }
+
+    @Override
+    public Map<String, Long> getStartupPhaseMillis() {
+        synchronized (startupPhases) {
+            return new LinkedHashMap<>(startupPhases);
+        }
+    }
+
+    @Override
+    public String getDatabaseType() {
+        DatabaseManager databaseManager = plugin.getDatabaseManager();
+        return databaseManager != null ? databaseManager.getCurrentDatabaseType() : "none";
+    }
+
+    @Override
+    public String getPoolStats() {
+        DatabaseManager databaseManager = plugin.getDatabaseManager();
+        return databaseManager != null ? databaseManager.getPoolStats() : "not connected";
+    }
+
+    @Override
+    public int getCachedCollections() {
+        CollectionStore store = plugin.getCollectionStore();
+        return store != null ? store.size() : 0;
+    }
+
+    @Override
+    public int getLeaderboardPlayers() {
+        LeaderboardIndex leaderboard = plugin.getLeaderboard();
+        return leaderboard != null ? leaderboard.getParticipants() : 0;
+    }
+
+    @Override
+    public int getCachedPlayerNames() {
+        PlayerProfileCache profileCache = plugin.getProfileCache();
+        return profileCache != null ? profileCache.getNameCount() : 0;
+    }
+
+    @Override
+    public int getCachedProfiles() {
+        PlayerProfileCache profileCache = plugin.getProfileCache();
+        return profileCache != null ? profileCache.getProfileCount() : 0;
+    }
+
+    @Override
+    public long getEstimatedHeapBytesPerPlayer() {
+        CollectibleItems items = plugin.getCollectibleItems();
+        return items != null ? PlayerCollection.estimateHeapBytes(items.size()) : 0;
+    }
+
+    // Cached collections plus the leaderboard index, the two caches that grow with player count
+    @Override
+    public long getEstimatedCacheHeapBytes() {
+        return getCachedCollections() * getEstimatedHeapBytesPerPlayer()
+                + getLeaderboardPlayers() * LEADERBOARD_BYTES_PER_PLAYER;
+    }
+
+    @Override
+    public int getWriteQueueDepth() {
+        CollectionWriteQueue writeQueue = plugin.getWriteQueue();
+        return writeQueue != null ? writeQueue.getQueueDepth() : 0;
+    }
+
+    @Override
+    public int getPendingSettings() {
+        CollectionWriteQueue writeQueue = plugin.getWriteQueue();
+        return writeQueue != null ? writeQueue.getPendingSettings() : 0;
+    }
+
+    @Override
+    public long getWriteAheadLogBytes() {
+        CollectionWriteQueue writeQueue = plugin.getWriteQueue();
+        return writeQueue != null ? writeQueue.getWriteAheadLogSize() : 0;
+    }
+
+    // Report for /collectiontracker stats, latencies that were never recorded are left out
+    public List<String> getReport() {
+        List<String> lines = new ArrayList<>();
+        lines.add("§6=== CollectionTracker Stats ===");
+
+        StringBuilder startup = new StringBuilder("§eStartup:§7");
+        for (Map.Entry<String, Long> phase : getStartupPhaseMillis().entrySet()) {
+            startup.append(' ').append(phase.getKey()).append(' ').append(phase.getValue()).append("ms");
+        }
+        lines.add(startup.toString());
+
+        lines.add("§eEvent handlers:");
+        Map<String, Long> discoveries = getHandlerDiscoveries();
+        addLatencies(lines, getHandlerLatencies(), discoveries);
+
+        lines.add("§eDatabase (" + getDatabaseType() + "): §7" + getPoolStats());
+        addLatencies(lines, getDatabaseLatencies(), null);
+
+        lines.add("§eGUI builds:");
+        addLatencies(lines, getGuiBuildLatencies(), null);
+
+        lines.add("§eCaches: §7" + getCachedCollections() + " collections, " + getLeaderboardPlayers()
+                + " leaderboard players, " + getCachedPlayerNames() + " names, " + getCachedProfiles() + " profiles");
+        lines.add("§eEstimated heap: §7" + formatBytes(getEstimatedCacheHeapBytes()) + " (~"
+                + getEstimatedHeapBytesPerPlayer() + " bytes per cached collection)");
+        lines.add("§eWrite queue: §7" + getWriteQueueDepth() + " players, " + getPendingSettings()
+                + " settings pending, write-ahead log " + formatBytes(getWriteAheadLogBytes()));
+        return lines;
+    }
+
+    private static void addLatencies(List<String> lines, Map<String, LatencyHistogram.Snapshot> latencies,
+                                     Map<String, Long> discoveries) {
+        boolean any = false;
+        for (Map.Entry<String, LatencyHistogram.Snapshot> entry : latencies.entrySet()) {
+            LatencyHistogram.Snapshot snapshot = entry.getValue();
+            if (snapshot.getCount() == 0) {
+                continue;
+            }
+            String line = "§7  " + entry.getKey() + ": " + snapshot.format();
+            if (discoveries != null) {
+                line += " new=" + discoveries.getOrDefault(entry.getKey(), 0L);
+            }
+            lines.add(line);
+            any = true;
+        }
+        if (!any) {
+            lines.add("§7  nothing recorded yet");
+        }
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+}
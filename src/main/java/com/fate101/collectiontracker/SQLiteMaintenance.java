@@ -0,0 +1,66 @@
+package com.fate101.collectiontracker;
+
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+// Background housekeeping for the SQLite database: passive WAL checkpoints keep the -wal file
+// from growing between SQLite's automatic checkpoints, ANALYZE keeps the planner statistics
+// current, and incremental vacuum hands free pages back to the file system a little at a time.
+// Everything runs on async tasks through the single writer connection.
+public class SQLiteMaintenance {
+    private final JavaPlugin plugin;
+    private final Logger logger;
+    private final DatabaseManager databaseManager;
+    private final List<BukkitTask> tasks = new ArrayList<>();
+
+    private final long checkpointIntervalTicks;
+    private final long analyzeIntervalTicks;
+    private final long vacuumIntervalTicks;
+    private final int vacuumPages;
+
+    public SQLiteMaintenance(JavaPlugin plugin, DatabaseManager databaseManager) {
+        this.plugin = plugin;
+        this.logger = plugin.getLogger();
+        this.databaseManager = databaseManager;
+
+        FileConfiguration config = plugin.getConfig();
+        this.checkpointIntervalTicks = config.getLong("database.sqlite.maintenance.wal-checkpoint-interval-seconds", 300) * 20L;
+        this.analyzeIntervalTicks = config.getLong("database.sqlite.maintenance.analyze-interval-minutes", 360) * 1200L;
+        this.vacuumIntervalTicks = config.getLong("database.sqlite.maintenance.incremental-vacuum-interval-minutes", 60) * 1200L;
+        this.vacuumPages = Math.max(1, config.getInt("database.sqlite.maintenance.incremental-vacuum-pages", 1000));
+    }
+
+    public void start() {
+        if (checkpointIntervalTicks > 0) {
+            schedule(checkpointIntervalTicks, () -> databaseManager.checkpointWal("PASSIVE"), null);
+        }
+        if (analyzeIntervalTicks > 0) {
+            schedule(analyzeIntervalTicks, databaseManager::analyze, "ANALYZE");
+        }
+        if (vacuumIntervalTicks > 0) {
+            schedule(vacuumIntervalTicks, () -> databaseManager.incrementalVacuum(vacuumPages), "Incremental vacuum");
+        }
+    }
+
+    public void shutdown() {
+        for (BukkitTask task : tasks) {
+            task.cancel();
+        }
+        tasks.clear();
+    }
+
+    private void schedule(long intervalTicks, BooleanSupplier step, String name) {
+        tasks.add(plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, () -> {
+            long start = System.currentTimeMillis();
+            if (step.getAsBoolean() && name != null) {
+                logger.fine(name + " took " + (System.currentTimeMillis() - start) + "ms");
+            }
+        }, intervalTicks, intervalTicks));
+    }
+}
@@ -0,0 +1,39 @@
+package com.fate101.collectiontracker;
+
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+
+// Marks inventories opened by this plugin. Click handling checks the holder instead of the
+// window title, so titles can be changed or translated freely.
+public class TrackerGuiHolder implements InventoryHolder {
+    public enum Type {
+        COLLECTION,
+        LEADERBOARD
+    }
+
+    private final Type type;
+    private final int page;
+    private Inventory inventory;
+
+    public TrackerGuiHolder(Type type, int page) {
+        this.type = type;
+        this.page = page;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    void setInventory(Inventory inventory) {
+        this.inventory = inventory;
+    }
+
+    @Override
+    public Inventory getInventory() {
+        return inventory;
+    }
+}
@@ -0,0 +1,340 @@
+package com.fate101.collectiontracker;
+
+import org.bukkit.Material;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+// Local log of discoveries the write-behind queue hasn't written to the database yet. Every
+// discovery is encoded into an in-memory buffer when it is queued; sync() swaps that buffer
+// out, writes it and flushes it to disk. sync() runs before every database write and on a
+// timer, so a crash loses at most the discoveries of the last sync interval, and append() never
+// waits for the disk.
+//
+// The log is a series of segment files. When the queue takes a batch that empties it, it seals
+// the current segment with rotate(): everything in it then belongs to that batch or to batches
+// already written, so release() deletes it once the batch commits, however busy the queue is
+// again by then. The next start replays whatever segments are left.
+//
+// Record: UUID as two longs, material name (DataOutput UTF), CRC32 of the preceding bytes.
+// Materials are stored by name so a log survives a Minecraft update.
+public class WriteAheadLog {
+    private static final int INITIAL_BUFFER_BYTES = 64 * 1024;
+
+    private final File directory;
+    private final String name;
+    private final Pattern segmentName;
+    private final Logger logger;
+    // Held for the file I/O in sync(), release() and close(); never by append()
+    private final Object ioLock = new Object();
+
+    private volatile FileChannel channel;
+    // Guarded by this: records appended since the last swap, the segment they go to and where
+    // in the buffer the next segment starts, -1 when no rotation is waiting for sync()
+    private ByteBuffer appendBuffer = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+    private long appendSegment;
+    private int rotatePosition = -1;
+    private final CRC32 crc = new CRC32();
+    // Encoded material names by ordinal, built on first use
+    private final byte[][] materialNames = new byte[Material.values().length][];
+    // Guarded by ioLock: the buffer being written, swapped with appendBuffer on every sync, the
+    // segment the channel writes to and the sealed segments still on disk
+    private ByteBuffer writeBuffer = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+    private long fileSegment;
+    private final TreeSet<Long> sealedSegments = new TreeSet<>();
+    private volatile long sealedBytes;
+    private boolean failed;
+
+    // Segments are stored in directory as <name>-<number>.log
+    public WriteAheadLog(File directory, String name, Logger logger) {
+        this.directory = directory;
+        this.name = name;
+        this.segmentName = Pattern.compile(Pattern.quote(name) + "-(\\d+)\\.log");
+        this.logger = logger;
+    }
+
+    // Returns the discoveries left over from the last run, then opens a new segment for
+    // appending. Replayed segments stay on disk until the queue releases them.
+    public Map<UUID, Set<Material>> open() throws IOException {
+        synchronized (ioLock) {
+            Map<UUID, Set<Material>> recovered = new LinkedHashMap<>();
+            long lastSegment = 0;
+            int records = 0;
+            for (long segment : findSegments()) {
+                lastSegment = segment;
+                File file = segmentFile(segment);
+                int segmentRecords = read(file, recovered);
+                if (segmentRecords == 0) {
+                    // Nothing to replay, e.g. the empty segment of a clean shutdown
+                    if (!file.delete()) {
+                        logger.warning("Could not delete empty write-ahead log segment " + file.getName());
+                    }
+                    continue;
+                }
+                records += segmentRecords;
+                sealedSegments.add(segment);
+                sealedBytes += file.length();
+            }
+            if (records > 0) {
+                logger.info("Write-ahead log holds " + records + " unsaved discoveries for " + recovered.size()
+                        + " players from the last run");
+            }
+
+            fileSegment = lastSegment + 1;
+            channel = openSegment(fileSegment);
+            synchronized (this) {
+                appendSegment = fileSegment;
+            }
+            return recovered;
+        }
+    }
+
+    // Only encodes the record into memory, the file is written by the next sync()
+    public synchronized void append(UUID playerUUID, Material material) {
+        if (channel == null) {
+            return;
+        }
+        byte[] name = materialNames[material.ordinal()];
+        if (name == null) {
+            // Material names are plain ASCII, so this is the same as DataOutput.writeUTF
+            name = material.name().getBytes(StandardCharsets.US_ASCII);
+            materialNames[material.ordinal()] = name;
+        }
+        int recordLength = 8 + 8 + 2 + name.length + 4;
+        if (appendBuffer.remaining() < recordLength) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(appendBuffer.capacity() * 2, appendBuffer.position() + recordLength));
+            appendBuffer.flip();
+            larger.put(appendBuffer);
+            appendBuffer = larger;
+        }
+
+        int start = appendBuffer.position();
+        appendBuffer.putLong(playerUUID.getMostSignificantBits());
+        appendBuffer.putLong(playerUUID.getLeastSignificantBits());
+        appendBuffer.putShort((short) name.length);
+        appendBuffer.put(name);
+        crc.reset();
+        crc.update(appendBuffer.array(), start, appendBuffer.position() - start);
+        appendBuffer.putInt((int) crc.getValue());
+    }
+
+    // Seals the current segment at the end of what has been appended and returns its number,
+    // or -1 when the log isn't open. Only marks the position, the next sync() switches files.
+    // A second call before that sync() returns the same segment and keeps the first mark.
+    public synchronized long rotate() {
+        if (channel == null) {
+            return -1;
+        }
+        if (rotatePosition < 0) {
+            rotatePosition = appendBuffer.position();
+            appendSegment++;
+        }
+        return appendSegment - 1;
+    }
+
+    // Writes the records appended since the last call and flushes them to disk, starting the
+    // next segment first if rotate() asked for it. Appends made meanwhile go to the other
+    // buffer and wait for the next call.
+    public void sync() {
+        synchronized (ioLock) {
+            FileChannel current = channel;
+            if (current == null) {
+                return;
+            }
+            int rotateAt;
+            synchronized (this) {
+                ByteBuffer appended = appendBuffer;
+                appendBuffer = writeBuffer;
+                writeBuffer = appended;
+                rotateAt = rotatePosition;
+                rotatePosition = -1;
+            }
+            writeBuffer.flip();
+            if (rotateAt < 0 && !writeBuffer.hasRemaining()) {
+                writeBuffer.clear();
+                return;
+            }
+            try {
+                if (rotateAt >= 0) {
+                    int end = writeBuffer.limit();
+                    writeBuffer.limit(rotateAt);
+                    write(current);
+                    writeBuffer.limit(end);
+                    sealedBytes += current.size();
+                    current.close();
+                    sealedSegments.add(fileSegment);
+                    fileSegment++;
+                    try {
+                        current = openSegment(fileSegment);
+                    } catch (IOException e) {
+                        // Nothing left to append to, appends stop and the queue carries on in memory
+                        channel = null;
+                        throw e;
+                    }
+                    channel = current;
+                }
+                write(current);
+                failed = false;
+            } catch (IOException e) {
+                // The discoveries are still queued in memory, they just aren't crash-safe
+                if (!failed) {
+                    logger.severe("Failed to write the write-ahead log: " + e.getMessage());
+                    e.printStackTrace();
+                    failed = true;
+                }
+            } finally {
+                writeBuffer.clear();
+            }
+        }
+    }
+
+    // Deletes the sealed segments up to and including the given one. Only called once every
+    // discovery in them is in the database.
+    public void release(long segment) {
+        synchronized (ioLock) {
+            Iterator<Long> iterator = sealedSegments.headSet(segment, true).iterator();
+            while (iterator.hasNext()) {
+                File file = segmentFile(iterator.next());
+                long length = file.length();
+                if (file.delete() || !file.exists()) {
+                    sealedBytes -= length;
+                    iterator.remove();
+                } else {
+                    logger.warning("Could not delete write-ahead log segment " + file.getName());
+                }
+            }
+        }
+    }
+
+    public long getSize() {
+        FileChannel current = channel;
+        long buffered;
+        synchronized (this) {
+            buffered = appendBuffer.position();
+        }
+        try {
+            return sealedBytes + (current != null ? current.size() : 0) + buffered;
+        } catch (IOException e) {
+            return sealedBytes + buffered;
+        }
+    }
+
+    public void close() {
+        synchronized (ioLock) {
+            if (channel == null) {
+                return;
+            }
+            sync();
+            FileChannel current = channel;
+            channel = null;
+            if (current == null) {
+                return;
+            }
+            try {
+                boolean empty = current.size() == 0;
+                current.close();
+                // Everything was written, the next start has nothing to replay from it
+                if (empty && !segmentFile(fileSegment).delete()) {
+                    logger.warning("Could not delete empty write-ahead log segment " + segmentFile(fileSegment).getName());
+                }
+            } catch (IOException e) {
+                logger.warning("Failed to close the write-ahead log: " + e.getMessage());
+            }
+        }
+    }
+
+    private void write(FileChannel current) throws IOException {
+        while (writeBuffer.hasRemaining()) {
+            current.write(writeBuffer);
+        }
+        current.force(false);
+    }
+
+    private FileChannel openSegment(long segment) throws IOException {
+        return FileChannel.open(segmentFile(segment).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private File segmentFile(long segment) {
+        return new File(directory, name + "-" + segment + ".log");
+    }
+
+    // Numbers of the segments on disk, oldest first
+    private List<Long> findSegments() {
+        List<Long> segments = new ArrayList<>();
+        String[] names = directory.list();
+        if (names == null) {
+            return segments;
+        }
+        for (String fileName : names) {
+            Matcher matcher = segmentName.matcher(fileName);
+            if (matcher.matches()) {
+                segments.add(Long.parseLong(matcher.group(1)));
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    // Reads records of one segment until the end or the first damaged one, returns how many it read
+    private int read(File file, Map<UUID, Set<Material>> recovered) throws IOException {
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(64);
+        DataOutputStream recordOut = new DataOutputStream(recordBytes);
+        CRC32 crc = new CRC32();
+        long validLength = 0;
+        int records = 0;
+        int unknownMaterials = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                long msb;
+                long lsb;
+                String materialName;
+                int storedCrc;
+                try {
+                    msb = in.readLong();
+                    lsb = in.readLong();
+                    materialName = in.readUTF();
+                    storedCrc = in.readInt();
+                } catch (EOFException | UTFDataFormatException e) {
+                    break;
+                }
+
+                recordBytes.reset();
+                recordOut.writeLong(msb);
+                recordOut.writeLong(lsb);
+                recordOut.writeUTF(materialName);
+                crc.reset();
+                crc.update(recordBytes.toByteArray());
+                if ((int) crc.getValue() != storedCrc) {
+                    break;
+                }
+                validLength += recordBytes.size() + 4;
+                records++;
+
+                try {
+                    Material material = Material.valueOf(materialName);
+                    recovered.computeIfAbsent(new UUID(msb, lsb), key -> EnumSet.noneOf(Material.class)).add(material);
+                } catch (IllegalArgumentException e) {
+                    unknownMaterials++;
+                }
+            }
+        }
+
+        if (validLength < file.length()) {
+            logger.warning("Write-ahead log segment " + file.getName() + " ends with " + (file.length() - validLength)
+                    + " bytes of a partially written record, discarding them");
+        }
+        if (unknownMaterials > 0) {
+            logger.warning("Skipped " + unknownMaterials + " discoveries of unknown materials in " + file.getName());
+        }
+        return records;
+    }
+}